@@ -24,5 +24,15 @@ public class MessageConstant {
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
     public static final String ALREADY_EXIST = "已存在";
+    public static final String MENU_ITEM_NOT_FOUND = "菜品或套餐不存在";
+    public static final String MENU_ITEM_DISABLED = "购物车中有已停售的菜品或套餐";
+    public static final String MENU_ITEM_PRICE_CHANGED = "菜品或套餐价格已变化，请刷新购物车";
+    public static final String ORDER_IN_PROGRESS = "上一笔订单正在处理中，请稍后再试";
+    public static final String ORDER_BUSY = "当前下单人数过多，请稍后再试";
+    public static final String ORDER_TICKET_NOT_FOUND = "下单记录不存在或已过期";
+    public static final String ORDER_SUBMIT_FAILED = "下单失败，请重试";
+    public static final String ORDER_CURSOR_INVALID = "分页游标无效";
+    public static final String ORDER_PAYMENT_TIMEOUT = "订单超时，自动取消";
+    public static final String REPORT_DATE_RANGE_INVALID = "统计日期范围无效";
 
 }
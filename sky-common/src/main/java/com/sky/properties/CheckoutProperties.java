@@ -0,0 +1,55 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+@Component
+@ConfigurationProperties(prefix = "sky.checkout")
+@Data
+public class CheckoutProperties {
+
+    /**
+     * 配送费（元），订单总金额 = 菜品套餐金额 + 打包费 + 配送费
+     */
+    private BigDecimal deliveryFee = new BigDecimal(6);
+
+    /**
+     * 是否开启排队下单：提交时只校验并放入队列，立即返回下单凭证，由后台线程批量写入数据库
+     */
+    private boolean intakeEnabled = false;
+
+    /**
+     * 排队下单的队列长度
+     */
+    private int intakeQueueCapacity = 1000;
+
+    /**
+     * 写入订单的线程数，同时占用的数据库连接不超过该数量
+     */
+    private int intakeWorkers = 4;
+
+    /**
+     * 每个事务最多写入的订单数
+     */
+    private int intakeBatchSize = 20;
+
+    /**
+     * 队列满时的处理方式：reject（提示稍后再试）或caller-runs（在请求线程中直接下单）
+     */
+    private String intakeRejectPolicy = "reject";
+
+    /**
+     * 用户排队中订单标记的有效期（秒），订单在队列中时定时续期；
+     * 节点宕机丢失排队中的订单后，用户最多等待这么久就可以重新下单
+     */
+    private long intakePendingSeconds = 15;
+
+    /**
+     * 下单凭证的保存时间（分钟）
+     */
+    private long ticketTtlMinutes = 30;
+
+}
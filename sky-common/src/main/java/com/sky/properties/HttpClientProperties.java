@@ -0,0 +1,47 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.http-client")
+@Data
+public class HttpClientProperties {
+
+    /**
+     * 连接池最大连接数
+     */
+    private int maxTotal = 200;
+
+    /**
+     * 每个目标主机的最大连接数
+     */
+    private int maxPerRoute = 50;
+
+    /**
+     * 建立连接超时时间（毫秒）
+     */
+    private int connectTimeoutMillis = 5000;
+
+    /**
+     * 从连接池获取连接的超时时间（毫秒）
+     */
+    private int connectionRequestTimeoutMillis = 5000;
+
+    /**
+     * 读取响应超时时间（毫秒）
+     */
+    private int socketTimeoutMillis = 5000;
+
+    /**
+     * 服务端没有返回Keep-Alive时连接的保持时间（毫秒）
+     */
+    private long keepAliveMillis = 30000;
+
+    /**
+     * 空闲超过该时间（毫秒）的连接由后台线程关闭
+     */
+    private long maxIdleMillis = 60000;
+
+}
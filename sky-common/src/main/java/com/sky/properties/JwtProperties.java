@@ -23,4 +23,9 @@ public class JwtProperties {
     private long userTtl;
     private String userTokenName;
 
+    /**
+     * 已校验令牌的缓存数量，缓存到令牌过期为止
+     */
+    private long verifiedCacheSize = 10000;
+
 }
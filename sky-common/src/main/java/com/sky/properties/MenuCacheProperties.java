@@ -0,0 +1,58 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache.menu")
+@Data
+public class MenuCacheProperties {
+
+    /**
+     * 本地一级缓存每个区域最多缓存的条目数
+     */
+    private long localMaxSize = 1000;
+
+    /**
+     * 本地一级缓存写入后的过期时间（秒），失效消息丢失时最多读到这么久的旧数据
+     */
+    private long localTtlSeconds = 60;
+
+    /**
+     * 通知各节点清除本地缓存的redis频道
+     */
+    private String invalidateChannel = "cache:invalidate";
+
+    /**
+     * 菜品缓存直接保存最终响应（Result）的JSON字节，命中时原样写回响应，不再反序列化和重新序列化
+     */
+    private boolean rawJsonEnabled = false;
+
+    /**
+     * redis缓存过期时间的随机抖动上限（秒），避免同一时间写入的缓存同时过期
+     */
+    private long ttlJitterSeconds = 300;
+
+    /**
+     * 缓存过了新鲜期后继续返回旧数据并在后台刷新的时间窗口（秒），0表示不开启
+     */
+    private long staleSeconds = 0;
+
+    /**
+     * 缓存加载锁的租约时间（毫秒），持有锁的节点宕机时锁在这之后自动释放
+     */
+    private long leaseMillis = 5000;
+
+    /**
+     * 没拿到加载锁时等待其它节点写入缓存的最长时间（毫秒），超时后自己查库
+     */
+    private long leaseWaitMillis = 3000;
+
+    /**
+     * 菜品套餐信息（menu_item_catalog）redis hash的过期时间（秒），从第一次写入开始计算，过期后按需重新加载
+     * 配置项：sky.cache.menu.catalog-ttl-seconds
+     */
+    private long catalogTtlSeconds = 3600;
+
+}
@@ -0,0 +1,33 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-no")
+@Data
+public class OrderNoProperties {
+
+    /**
+     * 订单号生成方式：snowflake（本地生成，需要给每个节点配置不同的nodeId）或redis（redis号段分配）
+     */
+    private String type = "snowflake";
+
+    /**
+     * snowflake方式的节点编号，0-9，多个节点不能重复；
+     * -1（默认）表示启动时从redis租用一个空闲的编号，定时续期，10个编号都被占用时启动失败
+     */
+    private int nodeId = -1;
+
+    /**
+     * 自动分配的节点编号的租约时间（秒），每隔三分之一的时间续期一次
+     */
+    private long nodeLeaseSeconds = 30;
+
+    /**
+     * redis方式每次从redis申请的号段大小
+     */
+    private int segmentSize = 100;
+
+}
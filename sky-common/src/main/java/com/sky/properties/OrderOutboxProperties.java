@@ -0,0 +1,47 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.outbox")
+@Data
+public class OrderOutboxProperties {
+
+    /**
+     * 每批发送的消息数
+     */
+    private int batchSize = 100;
+
+    /**
+     * 兜底轮询的间隔（毫秒），正常情况下事务提交后立即发送
+     */
+    private long pollIntervalMillis = 1000;
+
+    /**
+     * 认领的有效期（秒），节点认领后宕机时，到期后其它节点可以重新发送
+     */
+    private long leaseSeconds = 30;
+
+    /**
+     * 最大发送次数，超过后标记为发送失败
+     */
+    private int maxAttempts = 10;
+
+    /**
+     * 重试间隔上限（秒），重试间隔从1秒开始每次翻倍
+     */
+    private long maxBackoffSeconds = 300;
+
+    /**
+     * 已发送的消息保留的天数，每天清理一次更早的消息
+     */
+    private int retentionDays = 7;
+
+    /**
+     * 清理时每次删除的行数，分批删除避免长时间锁表
+     */
+    private int cleanupBatchSize = 1000;
+
+}
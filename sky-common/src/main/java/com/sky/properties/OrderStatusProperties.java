@@ -0,0 +1,17 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-status")
+@Data
+public class OrderStatusProperties {
+
+    /**
+     * 订单状态计数和数据库对账的间隔（毫秒），用于校正进程崩溃、批量更新等造成的计数偏差
+     */
+    private long reconcileIntervalMillis = 60000;
+
+}
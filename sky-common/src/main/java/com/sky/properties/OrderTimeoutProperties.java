@@ -0,0 +1,42 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-timeout")
+@Data
+public class OrderTimeoutProperties {
+
+    /**
+     * 待付款订单超过多少分钟自动取消
+     */
+    private long paymentTimeoutMinutes = 15;
+
+    /**
+     * 派送中订单超过多少分钟自动完成
+     */
+    private long deliveryTimeoutMinutes = 1440;
+
+    /**
+     * 轮询到期订单的间隔（毫秒）
+     */
+    private long pollIntervalMillis = 1000;
+
+    /**
+     * 每批处理的到期订单数
+     */
+    private int batchSize = 50;
+
+    /**
+     * 认领的有效期（秒），节点认领后宕机或处理失败时，到期后重新处理
+     */
+    private long leaseSeconds = 60;
+
+    /**
+     * 启动时从数据库恢复到期时间，每次查询的订单数
+     */
+    private int recoveryBatchSize = 500;
+
+}
@@ -0,0 +1,23 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.report")
+@Data
+public class ReportProperties {
+
+    /**
+     * 报表是否读取按天预聚合的daily_statistics表，关闭后直接统计orders、user表
+     * 开启前先建表（sql/daily_statistics.sql），并调用POST /admin/report/rebuild回填历史数据
+     */
+    private boolean rollupEnabled = false;
+
+    /**
+     * 每晚重建最近多少天的预聚合数据，用于校正批量更新等未走增量维护的订单
+     */
+    private int rebuildDays = 7;
+
+}
@@ -0,0 +1,23 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.scheduling")
+@Data
+public class SchedulingProperties {
+
+    /**
+     * 定时任务线程数，不小于定时任务的个数，避免耗时的任务阻塞其它任务
+     * （购物车同步、发件箱、订单超时、状态计数对账、websocket心跳、排队下单续期、订单号节点续期、报表重建）
+     */
+    private int poolSize = 10;
+
+    /**
+     * 应用关闭时等待正在执行的定时任务结束的时间（秒）
+     */
+    private int awaitTerminationSeconds = 30;
+
+}
@@ -0,0 +1,32 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cart")
+@Data
+public class ShoppingCartProperties {
+
+    /**
+     * 购物车以redis为准，数量修改只写redis，由后台任务批量同步到mysql
+     */
+    private boolean redisAuthoritative = false;
+
+    /**
+     * redis中购物车的过期时间（分钟），过期后从mysql重新加载
+     */
+    private long expireMinutes = 30;
+
+    /**
+     * 每批同步到mysql的用户数
+     */
+    private int flushBatchSize = 200;
+
+    /**
+     * 同步到mysql的间隔（毫秒）
+     */
+    private long flushIntervalMillis = 1000;
+
+}
@@ -0,0 +1,62 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    /**
+     * 每个连接待发送消息队列的长度，队列满说明客户端消费太慢，断开该连接
+     */
+    private int maxQueueSize = 256;
+
+    /**
+     * 单条消息发送超时时间（毫秒），超时断开该连接
+     */
+    private long sendTimeoutMillis = 10000;
+
+    /**
+     * 群发线程数
+     */
+    private int broadcastThreads = 2;
+
+    /**
+     * 是否通过redis频道向所有节点群发，关闭时只推送本节点的连接
+     */
+    private boolean clusterEnabled = true;
+
+    /**
+     * 集群群发使用的redis频道
+     */
+    private String clusterChannel = "websocket:broadcast";
+
+    /**
+     * 已处理消息id的去重容量
+     */
+    private int dedupCapacity = 10000;
+
+    /**
+     * 集群消息本地分发线程数，同一门店的消息总是由同一线程按顺序分发
+     */
+    private int dispatchThreads = 4;
+
+    /**
+     * 连接空闲（没有收发消息）超过该时间（毫秒）后发送ping
+     */
+    private long heartbeatIntervalMillis = 30000;
+
+    /**
+     * 发送ping后等待pong的时间（毫秒），超时视为连接已断开
+     */
+    private long heartbeatTimeoutMillis = 10000;
+
+    /**
+     * 检查空闲连接的间隔（毫秒）
+     */
+    private long heartbeatCheckMillis = 5000;
+
+}
@@ -0,0 +1,24 @@
+package com.sky.result;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 封装游标分页查询结果
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageResult<T> implements Serializable {
+
+    private List<T> records; //当前页数据集合
+
+    private String nextCursor; //查询下一页的游标，没有下一页时为null
+
+    private Long total; //总记录数，没有要求统计时为null
+
+}
@@ -0,0 +1,83 @@
+package com.sky.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 批量关联加载工具类
+ * 用一次 where xxx_id in (...) 查询代替循环中逐条查询子表，再在内存中按外键分组回填到父对象
+ */
+public class BatchLoaderUtil {
+
+    /**
+     * 单条in查询最多携带的id数量，超过后分批查询
+     */
+    static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * 批量加载关联数据并回填
+     *
+     * @param parents   父对象集合
+     * @param parentKey 父对象的主键
+     * @param fetcher   根据一批主键查询子对象，例如 orderDetailMapper::getByOrderIds
+     * @param childKey  子对象上指向父对象的外键
+     * @param setter    回填方法，没有子对象的父对象会回填空集合
+     */
+    public static <P, C, K> void attach(Collection<P> parents,
+                                        Function<P, K> parentKey,
+                                        Function<List<K>, List<C>> fetcher,
+                                        Function<C, K> childKey,
+                                        BiConsumer<P, List<C>> setter) {
+        if (parents == null || parents.isEmpty()) {
+            return;
+        }
+        Set<K> keys = new LinkedHashSet<>();
+        for (P parent : parents) {
+            K key = parentKey.apply(parent);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        Map<K, List<C>> grouped = load(new ArrayList<>(keys), fetcher, childKey);
+        for (P parent : parents) {
+            List<C> children = grouped.get(parentKey.apply(parent));
+            setter.accept(parent, children != null ? children : new ArrayList<>());
+        }
+    }
+
+    /**
+     * 批量查询子对象并按外键分组
+     *
+     * @param keys     父对象主键
+     * @param fetcher  根据一批主键查询子对象
+     * @param childKey 子对象上指向父对象的外键
+     * @return 外键 -> 子对象列表
+     */
+    public static <C, K> Map<K, List<C>> load(List<K> keys,
+                                              Function<List<K>, List<C>> fetcher,
+                                              Function<C, K> childKey) {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<K, List<C>> grouped = new HashMap<>();
+        for (int from = 0; from < keys.size(); from += MAX_BATCH_SIZE) {
+            List<K> batch = keys.subList(from, Math.min(from + MAX_BATCH_SIZE, keys.size()));
+            List<C> children = fetcher.apply(batch);
+            if (children == null) {
+                continue;
+            }
+            for (C child : children) {
+                grouped.computeIfAbsent(childKey.apply(child), k -> new ArrayList<>()).add(child);
+            }
+        }
+        return grouped;
+    }
+}
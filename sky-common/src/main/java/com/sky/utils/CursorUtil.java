@@ -0,0 +1,52 @@
+package com.sky.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 游标分页的游标编码
+ * 游标由最后一条记录的（时间, id）组成，编码为base64，对客户端不透明
+ */
+public class CursorUtil {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * 生成游标
+     * @param time 最后一条记录的排序时间
+     * @param id 最后一条记录的id
+     * @return
+     */
+    public static String encode(LocalDateTime time, Long id) {
+        String raw = time + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标中的时间
+     * @param cursor
+     * @return 游标格式错误时抛出IllegalArgumentException
+     */
+    public static LocalDateTime decodeTime(String cursor) {
+        return LocalDateTime.parse(split(cursor)[0]);
+    }
+
+    /**
+     * 解析游标中的id
+     * @param cursor
+     * @return 游标格式错误时抛出IllegalArgumentException
+     */
+    public static Long decodeId(String cursor) {
+        return Long.valueOf(split(cursor)[1]);
+    }
+
+    private static String[] split(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int index = raw.lastIndexOf(SEPARATOR);
+        if (index <= 0) {
+            throw new IllegalArgumentException("游标格式错误：" + cursor);
+        }
+        return new String[]{raw.substring(0, index), raw.substring(index + 1)};
+    }
+}
@@ -10,7 +10,10 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 
@@ -19,13 +22,83 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Http工具类
+ * 所有请求共用一个带连接池的HttpClient，复用TCP/TLS连接，不要在请求结束后关闭它
+ * 超时时间使用HttpClient创建时的默认配置，请求上不再单独设置
  */
 public class HttpClientUtil {
 
     static final  int TIMEOUT_MSEC = 5 * 1000;
+    static final int MAX_TOTAL = 200;
+    static final int MAX_PER_ROUTE = 50;
+    static final long KEEP_ALIVE_MSEC = 30 * 1000;
+    static final long MAX_IDLE_MSEC = 60 * 1000;
+
+    //未通过setHttpClient配置时使用默认参数的连接池
+    private static volatile CloseableHttpClient httpClient;
+
+    /**
+     * 创建带连接池的HttpClient
+     * @param maxTotal 最大连接数
+     * @param maxPerRoute 每个目标主机的最大连接数
+     * @param connectTimeout 建立连接超时时间（毫秒）
+     * @param connectionRequestTimeout 从连接池获取连接的超时时间（毫秒）
+     * @param socketTimeout 读取响应超时时间（毫秒）
+     * @param keepAlive 服务端没有返回Keep-Alive时连接的保持时间（毫秒）
+     * @param maxIdle 空闲超过该时间（毫秒）的连接由后台线程关闭
+     * @return
+     */
+    public static CloseableHttpClient createHttpClient(int maxTotal, int maxPerRoute, int connectTimeout,
+                                                       int connectionRequestTimeout, int socketTimeout,
+                                                       long keepAlive, long maxIdle) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        //空闲一段时间的连接复用前先检查是否已被服务端关闭
+        connectionManager.setValidateAfterInactivity(2000);
+
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : keepAlive;
+        };
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeout)
+                        .setConnectionRequestTimeout(connectionRequestTimeout)
+                        .setSocketTimeout(socketTimeout).build())
+                .evictExpiredConnections()
+                .evictIdleConnections(maxIdle, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 使用配置好的HttpClient，由调用方负责在应用关闭时关闭
+     * @param client
+     */
+    public static void setHttpClient(CloseableHttpClient client) {
+        httpClient = client;
+    }
+
+    private static CloseableHttpClient getHttpClient() {
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (HttpClientUtil.class) {
+                client = httpClient;
+                if (client == null) {
+                    client = createHttpClient(MAX_TOTAL, MAX_PER_ROUTE, TIMEOUT_MSEC, TIMEOUT_MSEC, TIMEOUT_MSEC,
+                            KEEP_ALIVE_MSEC, MAX_IDLE_MSEC);
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
 
     /**
      * 发送GET方式请求
@@ -34,11 +107,7 @@ public class HttpClientUtil {
      * @return
      */
     public static String doGet(String url,Map<String,String> paramMap){
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-
         String result = "";
-        CloseableHttpResponse response = null;
 
         try{
             URIBuilder builder = new URIBuilder(url);
@@ -52,22 +121,17 @@ public class HttpClientUtil {
             //创建GET请求
             HttpGet httpGet = new HttpGet(uri);
 
-            //发送请求
-            response = httpClient.execute(httpGet);
-
-            //判断响应状态
-            if(response.getStatusLine().getStatusCode() == 200){
-                result = EntityUtils.toString(response.getEntity(),"UTF-8");
+            //发送请求，关闭响应时连接归还连接池
+            try (CloseableHttpResponse response = getHttpClient().execute(httpGet)) {
+                //判断响应状态
+                if(response.getStatusLine().getStatusCode() == 200){
+                    result = EntityUtils.toString(response.getEntity(),"UTF-8");
+                } else {
+                    EntityUtils.consume(response.getEntity());
+                }
             }
         }catch (Exception e){
             e.printStackTrace();
-        }finally {
-            try {
-                response.close();
-                httpClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
 
         return result;
@@ -81,9 +145,6 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        CloseableHttpResponse response = null;
         String resultString = "";
 
         try {
@@ -101,20 +162,12 @@ public class HttpClientUtil {
                 httpPost.setEntity(entity);
             }
 
-            httpPost.setConfig(builderRequestConfig());
-
-            // 执行http请求
-            response = httpClient.execute(httpPost);
-
-            resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
+            // 执行http请求，关闭响应时连接归还连接池
+            try (CloseableHttpResponse response = getHttpClient().execute(httpPost)) {
+                resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
+            }
         } catch (Exception e) {
             throw e;
-        } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
 
         return resultString;
@@ -128,9 +181,6 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost4Json(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        CloseableHttpResponse response = null;
         String resultString = "";
 
         try {
@@ -151,29 +201,14 @@ public class HttpClientUtil {
                 httpPost.setEntity(entity);
             }
 
-            httpPost.setConfig(builderRequestConfig());
-
-            // 执行http请求
-            response = httpClient.execute(httpPost);
-
-            resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
+            // 执行http请求，关闭响应时连接归还连接池
+            try (CloseableHttpResponse response = getHttpClient().execute(httpPost)) {
+                resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
+            }
         } catch (Exception e) {
             throw e;
-        } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
 
         return resultString;
     }
-    private static RequestConfig builderRequestConfig() {
-        return RequestConfig.custom()
-                .setConnectTimeout(TIMEOUT_MSEC)
-                .setConnectionRequestTimeout(TIMEOUT_MSEC)
-                .setSocketTimeout(TIMEOUT_MSEC).build();
-    }
-
 }
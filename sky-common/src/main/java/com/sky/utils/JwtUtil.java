@@ -46,10 +46,21 @@ public class JwtUtil {
      * @return
      */
     public static Claims parseJWT(String secretKey, String token) {
+        return parseJWT(secretKey.getBytes(StandardCharsets.UTF_8), token);
+    }
+
+    /**
+     * Token解密，使用预先转换好的秘钥字节，避免每次请求重复转换
+     *
+     * @param secretKey jwt秘钥（UTF-8字节）
+     * @param token     加密后的token
+     * @return
+     */
+    public static Claims parseJWT(byte[] secretKey, String token) {
         // 得到DefaultJwtParser
         Claims claims = Jwts.parser()
                 // 设置签名的秘钥
-                .setSigningKey(secretKey.getBytes(StandardCharsets.UTF_8))
+                .setSigningKey(secretKey)
                 // 设置需要解析的jwt
                 .parseClaimsJws(token).getBody();
         return claims;
@@ -5,21 +5,26 @@ import com.alibaba.fastjson.JSONObject;
 import com.sky.properties.WeChatProperties;
 import com.wechat.pay.contrib.apache.httpclient.WechatPayHttpClientBuilder;
 import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.security.PrivateKey;
 import java.security.Signature;
@@ -28,50 +33,147 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 微信支付工具类
  */
 @Component
+@Slf4j
 public class WeChatPayUtil {
 
-    //微信支付下单接口地址
-    public static final String JSAPI = "https://api.mch.weixin.qq.com/v3/pay/transactions/jsapi";
+    //微信支付下单接口路径，接口地址见WeChatProperties.apiBaseUrl
+    public static final String JSAPI = "/v3/pay/transactions/jsapi";
 
-    //申请退款接口地址
-    public static final String REFUNDS = "https://api.mch.weixin.qq.com/v3/refund/domestic/refunds";
+    //申请退款接口路径
+    public static final String REFUNDS = "/v3/refund/domestic/refunds";
 
     @Autowired
     private WeChatProperties weChatProperties;
 
+    //检查证书文件是否变更的间隔
+    private static final long RELOAD_CHECK_MILLIS = 10 * 1000;
+    //空闲超过该时间的连接关闭
+    private static final long MAX_IDLE_MILLIS = 60 * 1000;
+    private static final int TIMEOUT_MILLIS = 10 * 1000;
+
+    //所有签名客户端共用的连接池，证书更新后重建客户端也能继续复用已有连接
+    private final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+
+    private volatile Credentials credentials;
+    private volatile long lastCheckMillis;
+
+    /**
+     * 已加载的商户私钥、平台证书和对应的签名客户端
+     */
+    private static class Credentials {
+        private final PrivateKey privateKey;
+        private final CloseableHttpClient httpClient;
+        private final long privateKeyModified;
+        private final long certModified;
+
+        private Credentials(PrivateKey privateKey, CloseableHttpClient httpClient,
+                            long privateKeyModified, long certModified) {
+            this.privateKey = privateKey;
+            this.httpClient = httpClient;
+            this.privateKeyModified = privateKeyModified;
+            this.certModified = certModified;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        connectionManager.setMaxTotal(50);
+        connectionManager.setDefaultMaxPerRoute(20);
+        connectionManager.setValidateAfterInactivity(2000);
+    }
+
+    @PreDestroy
+    public void close() {
+        connectionManager.shutdown();
+    }
+
     /**
      * 获取调用微信接口的客户端工具对象
+     * 私钥和证书只在首次使用和文件变更后加载，客户端在请求之间复用，不要在请求结束后关闭
      *
      * @return
      */
-    private CloseableHttpClient getClient() {
-        PrivateKey merchantPrivateKey = null;
-        try {
-            //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
-            merchantPrivateKey = PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath())));
-            //加载平台证书文件
-            X509Certificate x509Certificate = PemUtil.loadCertificate(new FileInputStream(new File(weChatProperties.getWeChatPayCertFilePath())));
-            //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
-            List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
-
-            WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
-                    .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
-                    .withWechatPay(wechatPayCertificates);
-
-            // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
-            CloseableHttpClient httpClient = builder.build();
-            return httpClient;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
+    private CloseableHttpClient getClient() throws IOException {
+        return getCredentials().httpClient;
+    }
+
+    /**
+     * 获取商户私钥和签名客户端，定期检查证书文件，文件修改后重新加载
+     */
+    private Credentials getCredentials() throws IOException {
+        Credentials current = credentials;
+        long now = System.currentTimeMillis();
+        if (current != null && now - lastCheckMillis < RELOAD_CHECK_MILLIS) {
+            return current;
+        }
+        synchronized (this) {
+            current = credentials;
+            if (current != null && now - lastCheckMillis < RELOAD_CHECK_MILLIS) {
+                return current;
+            }
+            lastCheckMillis = now;
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(MAX_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+
+            File privateKeyFile = new File(weChatProperties.getPrivateKeyFilePath());
+            File certFile = new File(weChatProperties.getWeChatPayCertFilePath());
+            long privateKeyModified = privateKeyFile.lastModified();
+            long certModified = certFile.lastModified();
+            if (current != null && current.privateKeyModified == privateKeyModified
+                    && current.certModified == certModified) {
+                return current;
+            }
+            try {
+                credentials = load(privateKeyFile, certFile, privateKeyModified, certModified);
+                log.info("微信支付商户私钥和平台证书已加载");
+            } catch (IOException | RuntimeException e) {
+                if (current == null) {
+                    throw e;
+                }
+                // 文件正在替换等情况，继续使用旧的证书，下次检查时重试
+                log.error("微信支付证书重新加载失败，继续使用已加载的证书", e);
+                return current;
+            }
+            // 旧客户端和新客户端共用连接池，不需要关闭
+            return credentials;
         }
     }
 
+    private Credentials load(File privateKeyFile, File certFile, long privateKeyModified, long certModified)
+            throws IOException {
+        PrivateKey merchantPrivateKey;
+        X509Certificate x509Certificate;
+        //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
+        try (FileInputStream in = new FileInputStream(privateKeyFile)) {
+            merchantPrivateKey = PemUtil.loadPrivateKey(in);
+        }
+        //加载平台证书文件
+        try (FileInputStream in = new FileInputStream(certFile)) {
+            x509Certificate = PemUtil.loadCertificate(in);
+        }
+        //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
+        List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
+
+        // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
+        CloseableHttpClient httpClient = WechatPayHttpClientBuilder.create()
+                .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
+                .withWechatPay(wechatPayCertificates)
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(TIMEOUT_MILLIS)
+                        .setConnectionRequestTimeout(TIMEOUT_MILLIS)
+                        .setSocketTimeout(TIMEOUT_MILLIS).build())
+                .build();
+        return new Credentials(merchantPrivateKey, httpClient, privateKeyModified, certModified);
+    }
+
     /**
      * 发送post方式请求
      *
@@ -80,21 +182,15 @@ public class WeChatPayUtil {
      * @return
      */
     private String post(String url, String body) throws Exception {
-        CloseableHttpClient httpClient = getClient();
-
         HttpPost httpPost = new HttpPost(url);
         httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
         httpPost.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
         httpPost.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
         httpPost.setEntity(new StringEntity(body, "UTF-8"));
 
-        CloseableHttpResponse response = httpClient.execute(httpPost);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
+        //关闭响应时连接归还连接池
+        try (CloseableHttpResponse response = getClient().execute(httpPost)) {
+            return EntityUtils.toString(response.getEntity());
         }
     }
 
@@ -105,20 +201,14 @@ public class WeChatPayUtil {
      * @return
      */
     private String get(String url) throws Exception {
-        CloseableHttpClient httpClient = getClient();
-
         HttpGet httpGet = new HttpGet(url);
         httpGet.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
 
-        CloseableHttpResponse response = httpClient.execute(httpGet);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
+        //关闭响应时连接归还连接池
+        try (CloseableHttpResponse response = getClient().execute(httpGet)) {
+            return EntityUtils.toString(response.getEntity());
         }
     }
 
@@ -151,7 +241,7 @@ public class WeChatPayUtil {
         jsonObject.put("payer", payer);
 
         String body = jsonObject.toJSONString();
-        return post(JSAPI, body);
+        return post(weChatProperties.getApiBaseUrl() + JSAPI, body);
     }
 
     /**
@@ -188,7 +278,7 @@ public class WeChatPayUtil {
             byte[] message = signMessage.getBytes();
 
             Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath()))));
+            signature.initSign(getCredentials().privateKey);
             signature.update(message);
             String packageSign = Base64.getEncoder().encodeToString(signature.sign());
 
@@ -230,6 +320,6 @@ public class WeChatPayUtil {
         String body = jsonObject.toJSONString();
 
         //调用申请退款接口
-        return post(REFUNDS, body);
+        return post(weChatProperties.getApiBaseUrl() + REFUNDS, body);
     }
 }
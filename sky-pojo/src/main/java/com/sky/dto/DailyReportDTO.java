@@ -0,0 +1,34 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 按天聚合的报表数据，一行对应一天
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyReportDTO implements Serializable {
+
+    //日期
+    private LocalDate date;
+
+    //营业额
+    private Double turnover;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数
+    private Integer validOrderCount;
+
+    //新增用户数
+    private Integer newUserCount;
+}
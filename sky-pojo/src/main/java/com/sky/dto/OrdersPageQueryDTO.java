@@ -27,4 +27,15 @@ public class OrdersPageQueryDTO implements Serializable {
 
     private Long userId;
 
+    //游标分页：上一页返回的游标，第一页传空字符串；不传时使用页码分页
+    private String cursor;
+
+    //是否统计总记录数，游标分页默认不统计，页码分页默认统计
+    private Boolean withTotal;
+
+    //由游标解析出的最后一条记录的下单时间和id
+    private LocalDateTime cursorTime;
+
+    private Long cursorId;
+
 }
@@ -0,0 +1,61 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 订单通知发件箱，和订单在同一个事务中写入，事务提交后由后台任务发送
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderOutbox implements Serializable {
+
+    /**
+     * 发送目标 redis频道order:arrived、websocket推送
+     */
+    public static final String REDIS = "REDIS";
+    public static final String WEBSOCKET = "WEBSOCKET";
+
+    /**
+     * 状态 0待发送 1已发送 2发送失败（超过最大重试次数）
+     */
+    public static final Integer PENDING = 0;
+    public static final Integer SENT = 1;
+    public static final Integer FAILED = 2;
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    //订单id
+    private Long orderId;
+
+    //发送目标
+    private String destination;
+
+    //消息内容
+    private String payload;
+
+    //状态
+    private Integer status;
+
+    //已尝试次数
+    private Integer attempts;
+
+    //下次可以发送的时间
+    private LocalDateTime nextRetryTime;
+
+    //认领该消息的节点和认领到期时间，到期未发送完成的消息可以被其它节点重新认领
+    private String owner;
+
+    private LocalDateTime leaseUntil;
+
+    private LocalDateTime createTime;
+}
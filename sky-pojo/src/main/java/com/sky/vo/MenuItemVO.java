@@ -0,0 +1,33 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 菜品或套餐加入购物车时需要的信息
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuItemVO implements Serializable {
+
+    private Long id;
+
+    //名称
+    private String name;
+
+    //价格
+    private BigDecimal price;
+
+    //图片
+    private String image;
+
+    //0 停售 1 起售
+    private Integer status;
+}
@@ -0,0 +1,45 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderIntakeMetricsVO implements Serializable {
+
+    //是否开启了排队下单
+    private Boolean enabled;
+
+    //队列中等待写入的订单数
+    private Integer queueDepth;
+
+    //队列长度
+    private Integer queueCapacity;
+
+    //进入队列的订单数
+    private Long enqueuedCount;
+
+    //队列满被拒绝（或在请求线程中处理）的订单数
+    private Long rejectedCount;
+
+    //写入成功的订单数
+    private Long completedCount;
+
+    //写入失败的订单数
+    private Long failedCount;
+
+    //写入事务数
+    private Long batchCount;
+
+    //平均排队时间（毫秒）
+    private Double avgWaitMillis;
+
+    //最大排队时间（毫秒）
+    private Double maxWaitMillis;
+}
@@ -14,6 +14,11 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 public class OrderSubmitVO implements Serializable {
+    //排队下单的处理状态
+    public static final String QUEUED = "QUEUED";
+    public static final String SUCCESS = "SUCCESS";
+    public static final String FAILED = "FAILED";
+
     //订单id
     private Long id;
     //订单号
@@ -22,4 +27,10 @@ public class OrderSubmitVO implements Serializable {
     private BigDecimal orderAmount;
     //下单时间
     private LocalDateTime orderTime;
+    //排队下单的凭证，同步下单时为空
+    private String ticket;
+    //排队下单的处理状态：QUEUED、SUCCESS、FAILED
+    private String status;
+    //下单失败的原因
+    private String message;
 }
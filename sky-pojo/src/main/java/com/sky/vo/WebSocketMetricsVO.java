@@ -0,0 +1,42 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebSocketMetricsVO implements Serializable {
+
+    //当前连接数
+    private Integer sessionCount;
+
+    //当前有订阅者的主题数
+    private Integer topicCount;
+
+    //所有连接待发送的消息总数
+    private Long queuedMessages;
+
+    //单个连接待发送消息数的最大值
+    private Integer maxQueueDepth;
+
+    //发送成功的消息数
+    private Long sentCount;
+
+    //发送失败的消息数
+    private Long failedCount;
+
+    //因消费太慢被断开的连接数
+    private Long evictedCount;
+
+    //平均发送耗时（毫秒）
+    private Double avgSendMillis;
+
+    //最大发送耗时（毫秒）
+    private Double maxSendMillis;
+}
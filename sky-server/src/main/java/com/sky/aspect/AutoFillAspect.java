@@ -12,73 +12,115 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.time.LocalDateTime;
+import java.util.Collection;
 
 //自定义切面类，实现公告字段填充
+//每个实体类的setter只查找一次，缓存为MethodHandle；参数是集合时（批量插入）为每个元素填充
 @Aspect
 @Component
 @Slf4j
 public class AutoFillAspect {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    //按实体类缓存公共字段的setter
+    private static final ClassValue<Setters> SETTERS = new ClassValue<Setters>() {
+        @Override
+        protected Setters computeValue(Class<?> type) {
+            return new Setters(type);
+        }
+    };
+
+    /**
+     * 实体类的公共字段setter，实体类没有对应方法时为null
+     */
+    private static class Setters {
+        private final Class<?> type;
+        private final MethodHandle setCreateTime;
+        private final MethodHandle setUpdateTime;
+        private final MethodHandle setCreateUser;
+        private final MethodHandle setUpdateUser;
+
+        private Setters(Class<?> type) {
+            this.type = type;
+            this.setCreateTime = find(type, AutoFillConstant.SET_CREATE_TIME, LocalDateTime.class);
+            this.setUpdateTime = find(type, AutoFillConstant.SET_UPDATE_TIME, LocalDateTime.class);
+            this.setCreateUser = find(type, AutoFillConstant.SET_CREATE_USER, Long.class);
+            this.setUpdateUser = find(type, AutoFillConstant.SET_UPDATE_USER, Long.class);
+        }
+
+        private static MethodHandle find(Class<?> type, String name, Class<?> paramType) {
+            try {
+                //转换为(Object, Object)void，调用时不需要知道具体类型
+                return LOOKUP.findVirtual(type, name, MethodType.methodType(void.class, paramType))
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            }
+        }
+
+        private void invoke(MethodHandle setter, String name, Object entity, Object value) {
+            if (setter == null) {
+                throw new RuntimeException(new NoSuchMethodException(type.getName() + "." + name));
+            }
+            try {
+                setter.invokeExact(entity, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     @Pointcut("execution(* com.sky.mapper.*.*(..)) && @annotation(com.sky.annotation.AutoFill)")
     public void autoFillPoint() {
     }
 
     @Before("autoFillPoint()")
     public void autoFill(JoinPoint joinPoint) {
-        log.info("开始进行数据填充");
         //获取当前被拦截方法上的AutoFill注解
         MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();//获取方法签名
         AutoFill autoFill = methodSignature.getMethod().getAnnotation(AutoFill.class);//获取注解对象
         OperationType operationType = autoFill.value();//获取操作类型
         //获取到当前被拦截的方法的参数
         Object[] args = joinPoint.getArgs();
-        Object entity = args[0];//获取被拦截的实体对象类
+        if (args == null || args.length == 0 || args[0] == null) {
+            return;
+        }
+        Object entity = args[0];//获取被拦截的实体对象（或实体集合）
         //准备赋值的数据
         LocalDateTime now = LocalDateTime.now();
-        long id = BaseContext.getCurrentId();
-
-        //根据对应的方法，为对应的属性赋值
-        if (operationType == OperationType.INSERT) {
-            try {
-                Method setCreateTime = entity.getClass().getDeclaredMethod(AutoFillConstant.SET_CREATE_TIME, LocalDateTime.class);
-                Method setUpdateTime = entity.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_TIME, LocalDateTime.class);
-                Method setCreateUser = entity.getClass().getDeclaredMethod(AutoFillConstant.SET_CREATE_USER, Long.class);
-                Method setUpdateUser = entity.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_USER, Long.class);
-                setCreateTime.invoke(entity, now);
-                setUpdateTime.invoke(entity, now);
-                setCreateUser.invoke(entity, id);
-                setUpdateUser.invoke(entity, id);
-            } catch (NoSuchMethodException e) {
-                throw new RuntimeException(e);
-            } catch (InvocationTargetException e) {
-                throw new RuntimeException(e);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            }
-        } else if (operationType == OperationType.UPDATE) {
-            try {
-                Method setUpdateTime = entity.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_TIME, LocalDateTime.class);
-                Method setUpdateUser = entity.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_USER, Long.class);
-                setUpdateTime.invoke(entity, now);
-                setUpdateUser.invoke(entity, id);
-            } catch (NoSuchMethodException e) {
-                throw new RuntimeException(e);
-            } catch (InvocationTargetException e) {
-                throw new RuntimeException(e);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
+        Long id = BaseContext.getCurrentId();
 
+        if (entity instanceof Collection) {
+            for (Object item : (Collection<?>) entity) {
+                if (item != null) {
+                    fill(item, operationType, now, id);
+                }
             }
+        } else {
+            fill(entity, operationType, now, id);
         }
+    }
 
+    /**
+     * 根据对应的方法，为对应的属性赋值
+     */
+    private void fill(Object entity, OperationType operationType, LocalDateTime now, Long id) {
+        Setters setters = SETTERS.get(entity.getClass());
+        if (operationType == OperationType.INSERT) {
+            setters.invoke(setters.setCreateTime, AutoFillConstant.SET_CREATE_TIME, entity, now);
+            setters.invoke(setters.setUpdateTime, AutoFillConstant.SET_UPDATE_TIME, entity, now);
+            setters.invoke(setters.setCreateUser, AutoFillConstant.SET_CREATE_USER, entity, id);
+            setters.invoke(setters.setUpdateUser, AutoFillConstant.SET_UPDATE_USER, entity, id);
+        } else if (operationType == OperationType.UPDATE) {
+            setters.invoke(setters.setUpdateTime, AutoFillConstant.SET_UPDATE_TIME, entity, now);
+            setters.invoke(setters.setUpdateUser, AutoFillConstant.SET_UPDATE_USER, entity, id);
+        }
     }
 }
-
-
-
-
-
-
-
@@ -3,7 +3,13 @@ package com.sky.aspect;
 import com.alibaba.fastjson.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.CollectionType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.sky.cache.LocalCacheRegistry;
+import com.sky.cache.MenuItemCatalog;
+import com.sky.cache.SingleFlightLoader;
 import com.sky.entity.Dish;
+import com.sky.json.JacksonObjectMapper;
+import com.sky.properties.MenuCacheProperties;
 import com.sky.result.Result;
 import com.sky.service.DishService;
 import com.sky.vo.DishVO;
@@ -12,17 +18,26 @@ import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 import com.sky.dto.DishDTO;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Aspect
@@ -34,6 +49,23 @@ public class DishCacheAspect {
     private ObjectMapper objectMapper;
     @Autowired
     private DishService dishService;
+    @Autowired
+    private LocalCacheRegistry localCacheRegistry;
+    @Autowired
+    private MenuCacheProperties menuCacheProperties;
+    @Autowired
+    private SingleFlightLoader singleFlightLoader;
+    @Autowired
+    private MenuItemCatalog menuItemCatalog;
+
+    //菜品缓存在本地一级缓存中的区域名
+    private static final String DISH_REGION = "dish";
+    //菜品缓存的基础过期时间（秒），实际写入redis时会加上随机抖动
+    private static final long DISH_TTL_SECONDS = 30 * 60;
+    //字节缓存的key前缀，和json字符串缓存分开，切换模式时不会读到另一种格式的数据
+    private static final String DISH_JSON_PREFIX = "dish_json_";
+    //和WebMvcConfiguration中消息转换器使用同样的配置，保证缓存的字节和正常响应完全一致
+    private static final ObjectMapper RESPONSE_MAPPER = new JacksonObjectMapper();
 
     //-------根据id存入缓存-----
     @Around("@annotation(com.sky.annotation.RedisCacheByCategoryId)")
@@ -47,43 +79,83 @@ public class DishCacheAspect {
 
         Long categoryId = (Long) args[0];
         String key = "dish_" + categoryId;
-        log.info("菜品缓存切面：处理分类ID{}的缓存，Key={}", categoryId, key);
-
-        // 关键修复3：先获取String类型的JSON，而非直接强转List
-        String cacheJson = (String) redisTemplate.opsForValue().get(key);
-        if (StringUtils.hasText(cacheJson)) {
-            log.info("菜品缓存切面：缓存命中，Key={}", key);
-            // 关键修复4：用ObjectMapper将JSON字符串反序列化为List<DishVO>
-            // 1. 构建List<DishVO>的类型对象
-            CollectionType listType = objectMapper.getTypeFactory()
-                    .constructCollectionType(List.class, DishVO.class);
-// 2. 反序列化
-            List<DishVO> list = objectMapper.readValue(cacheJson, listType);
+        log.debug("菜品缓存切面：处理分类ID{}的缓存，Key={}", categoryId, key);
+
+        if (menuCacheProperties.isRawJsonEnabled()) {
+            return cacheDishJson(joinPoint, DISH_JSON_PREFIX + categoryId);
+        }
+
+        // 先查本地一级缓存，命中时不需要访问redis和反序列化
+        Cache<String, Object> localCache = localCacheRegistry.region(DISH_REGION);
+        List<DishVO> localList = (List<DishVO>) localCache.getIfPresent(key);
+        if (localList != null) {
+            return Result.success(localList);
+        }
+
+        List<DishVO> list = readDishList(key);
+        if (list != null) {
+            log.debug("菜品缓存切面：缓存命中，Key={}", key);
+            localCache.put(key, list);
+            // 过了新鲜期的数据先返回，后台刷新
+            if (singleFlightLoader.isStale(key)) {
+                singleFlightLoader.refreshAsync(key, () -> loadDishList(joinPoint, key));
+            }
             return Result.success(list);
         }
 
-        // 缓存未命中：查询数据库
-        log.info("菜品缓存切面：缓存未命中，执行数据库查询，Key={}", key);
+        // 缓存未命中：同一个key只有一个请求查询数据库，其它请求等待结果
+        log.debug("菜品缓存切面：缓存未命中，执行数据库查询，Key={}", key);
+        return singleFlightLoader.load(key, () -> {
+            List<DishVO> cached = readDishList(key);
+            return cached == null ? null : Result.success(cached);
+        }, () -> loadDishList(joinPoint, key));
+    }
+
+    /**
+     * 读取redis中的菜品列表，未命中返回null
+     */
+    private List<DishVO> readDishList(String key) {
+        // 关键修复3：先获取String类型的JSON，而非直接强转List（旧版本写入的非String数据视为未命中）
+        Object cacheValue = redisTemplate.opsForValue().get(key);
+        if (!(cacheValue instanceof String) || !StringUtils.hasText((String) cacheValue)) {
+            return null;
+        }
+        // 关键修复4：用ObjectMapper将JSON字符串反序列化为List<DishVO>
+        CollectionType listType = objectMapper.getTypeFactory()
+                .constructCollectionType(List.class, DishVO.class);
+        try {
+            return objectMapper.readValue((String) cacheValue, listType);
+        } catch (IOException e) {
+            log.error("菜品缓存切面：缓存数据反序列化失败，Key={}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 查询数据库并写入两级缓存
+     */
+    private Result<List<DishVO>> loadDishList(ProceedingJoinPoint joinPoint, String key) throws Throwable {
         Result<List<DishVO>> result = (Result<List<DishVO>>) joinPoint.proceed();
 
         // 存入缓存（List序列化为JSON字符串）
         if (result != null && result.getData() != null) {
             String jsonStr = objectMapper.writeValueAsString(result.getData());
-            redisTemplate.opsForValue().set(key, jsonStr, 30, TimeUnit.MINUTES);
-            log.info("菜品缓存切面：数据库结果已存入缓存，Key={}", key);
+            redisTemplate.opsForValue().set(key, jsonStr,
+                    singleFlightLoader.hardTtlSeconds(DISH_TTL_SECONDS), TimeUnit.SECONDS);
+            singleFlightLoader.markFresh(key, DISH_TTL_SECONDS);
+            localCacheRegistry.region(DISH_REGION).put(key, result.getData());
+            log.debug("菜品缓存切面：数据库结果已存入缓存，Key={}", key);
         }
-
         return result;
     }
 
     //-------删除缓存-----
     @Around("@annotation(com.sky.annotation.RedisCacheEvitctById)")
     public Object deleteDishCache(ProceedingJoinPoint joinPoint) throws Throwable {
-        // 1. 先执行目标方法（完成数据变更：新增/修改/删除菜品）
-        Object result = joinPoint.proceed();
-
-        // 2. 解析参数，收集需要删除的分类ID（去重）
+        // 1. 执行目标方法前解析参数，收集需要删除的分类ID（去重）和菜品ID
+        // 删除的菜品在执行后就查不到分类，修改分类的菜品需要同时清除原分类的缓存
         Set<Long> categoryIds = new HashSet<>();
+        Set<Long> dishIds = new HashSet<>();
         Object[] args = joinPoint.getArgs();
         if (args != null && args.length > 0) {
             for (Object arg : args) {
@@ -94,24 +166,33 @@ public class DishCacheAspect {
                     DishDTO dishDTO = (DishDTO) arg;
                     if (dishDTO.getCategoryId() != null) {
                         categoryIds.add(dishDTO.getCategoryId());
-                        log.info("缓存删除切面：从DishDTO提取分类ID={}", dishDTO.getCategoryId());
+                        log.debug("缓存删除切面：从DishDTO提取分类ID={}", dishDTO.getCategoryId());
+                    }
+                    if (dishDTO.getId() != null) {
+                        dishIds.add(dishDTO.getId());
+                        Long cid = getCategoryIdByDishId(dishDTO.getId());
+                        if (cid != null) {
+                            categoryIds.add(cid);
+                        }
                     }
                 }
                 // 场景2：参数是单个Long（菜品ID → 查菜品获取分类ID）
                 else if (arg instanceof Long) {
                     Long dishId = (Long) arg;
+                    dishIds.add(dishId);
                     Long cid = getCategoryIdByDishId(dishId);
                     if (cid != null) {
                         categoryIds.add(cid);
-                        log.info("缓存删除切面：从菜品ID={}提取分类ID={}", dishId, cid);
+                        log.debug("缓存删除切面：从菜品ID={}提取分类ID={}", dishId, cid);
                     }
                 }
                 // 场景3：参数是List<Long>（批量菜品ID → 遍历查分类ID）
                 else if (arg instanceof List<?>) {
-                    List<?> dishIds = (List<?>) arg;
-                    for (Object obj : dishIds) {
+                    List<?> idList = (List<?>) arg;
+                    for (Object obj : idList) {
                         if (obj instanceof Long) {
                             Long dishId = (Long) obj;
+                            dishIds.add(dishId);
                             Long cid = getCategoryIdByDishId(dishId);
                             if (cid != null) {
                                 categoryIds.add(cid);
@@ -122,12 +203,22 @@ public class DishCacheAspect {
             }
         }
 
+        // 2. 执行目标方法（完成数据变更：新增/修改/删除菜品）
+        Object result = joinPoint.proceed();
+
+        // 加入购物车使用的菜品信息缓存
+        menuItemCatalog.evictDishes(dishIds);
+
         // 3. 批量删除缓存（优化性能，避免循环删除）
         if (!CollectionUtils.isEmpty(categoryIds)) {
-            List<String> cacheKeys = categoryIds.stream()
-                    .map(cid -> "dish_" + cid)
-                    .collect(Collectors.toList());
+            List<String> cacheKeys = new ArrayList<>();
+            for (Long cid : categoryIds) {
+                cacheKeys.add("dish_" + cid);
+                cacheKeys.add(DISH_JSON_PREFIX + cid);
+            }
             redisTemplate.delete(cacheKeys); // 批量删除，效率更高
+            // 通知所有节点清除本地一级缓存
+            cacheKeys.forEach(cacheKey -> localCacheRegistry.invalidate(DISH_REGION, cacheKey));
             log.info("缓存删除切面：成功删除缓存Key列表={}", cacheKeys);
         } else {
             log.warn("缓存删除切面：未提取到任何分类ID，跳过缓存删除");
@@ -137,6 +228,77 @@ public class DishCacheAspect {
         return result;
     }
 
+    /**
+     * 字节缓存模式：缓存整个Result序列化后的JSON字节，命中时直接写入servlet输出流
+     * 命中时返回null，spring mvc对null返回值不再写响应体
+     */
+    private Object cacheDishJson(ProceedingJoinPoint joinPoint, String key) throws Throwable {
+        HttpServletResponse response = currentResponse();
+        Cache<String, Object> localCache = localCacheRegistry.region(DISH_REGION);
+        byte[] bytes = (byte[]) localCache.getIfPresent(key);
+        if (bytes == null) {
+            bytes = readDishBytes(key);
+            if (bytes != null) {
+                localCache.put(key, bytes);
+                if (singleFlightLoader.isStale(key)) {
+                    singleFlightLoader.refreshAsync(key, () -> loadDishBytes(joinPoint, key));
+                }
+            }
+        }
+        if (bytes != null && response != null && !response.isCommitted()) {
+            response.setContentType("application/json;charset=UTF-8");
+            response.setContentLength(bytes.length);
+            response.getOutputStream().write(bytes);
+            response.flushBuffer();
+            return null;
+        }
+        if (bytes != null) {
+            //不在web请求中调用时，退回为普通的返回值
+            return RESPONSE_MAPPER.readValue(bytes, Result.class);
+        }
+
+        log.debug("菜品缓存切面：缓存未命中，执行数据库查询，Key={}", key);
+        return singleFlightLoader.load(key, () -> {
+            byte[] cached = readDishBytes(key);
+            try {
+                return cached == null ? null : RESPONSE_MAPPER.readValue(cached, Result.class);
+            } catch (IOException e) {
+                log.error("菜品缓存切面：缓存数据反序列化失败，Key={}", key, e);
+                return null;
+            }
+        }, () -> loadDishBytes(joinPoint, key));
+    }
+
+    private byte[] readDishBytes(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return (byte[]) redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(keyBytes));
+    }
+
+    private Result<List<DishVO>> loadDishBytes(ProceedingJoinPoint joinPoint, String key) throws Throwable {
+        Result<List<DishVO>> result = (Result<List<DishVO>>) joinPoint.proceed();
+        if (result != null && result.getData() != null) {
+            byte[] value = RESPONSE_MAPPER.writeValueAsBytes(result);
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            long ttl = singleFlightLoader.hardTtlSeconds(DISH_TTL_SECONDS);
+            redisTemplate.execute((RedisCallback<Object>) connection ->
+                    connection.stringCommands().set(keyBytes, value,
+                            Expiration.seconds(ttl), RedisStringCommands.SetOption.upsert()));
+            singleFlightLoader.markFresh(key, DISH_TTL_SECONDS);
+            localCacheRegistry.region(DISH_REGION).put(key, value);
+            log.debug("菜品缓存切面：数据库结果已存入字节缓存，Key={}", key);
+        }
+        return result;
+    }
+
+    private HttpServletResponse currentResponse() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            return ((ServletRequestAttributes) attributes).getResponse();
+        }
+        return null;
+    }
+
     /**
      * 辅助方法：通过菜品ID查询分类ID（容错处理，不影响核心业务）
      */
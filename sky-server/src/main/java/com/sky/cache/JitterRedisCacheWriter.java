@@ -0,0 +1,69 @@
+package com.sky.cache;
+
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+
+/**
+ * 写入redis时给过期时间加上随机抖动，避免同一时间写入的缓存同时过期
+ */
+public class JitterRedisCacheWriter implements RedisCacheWriter {
+
+    private final RedisCacheWriter delegate;
+    private final SingleFlightLoader singleFlightLoader;
+
+    public JitterRedisCacheWriter(RedisCacheWriter delegate, SingleFlightLoader singleFlightLoader) {
+        this.delegate = delegate;
+        this.singleFlightLoader = singleFlightLoader;
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, Duration ttl) {
+        delegate.put(name, key, value, jitter(ttl));
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return delegate.get(name, key);
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+        return delegate.putIfAbsent(name, key, value, jitter(ttl));
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        delegate.remove(name, key);
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        delegate.clean(name, pattern);
+    }
+
+    @Override
+    public void clearStatistics(String name) {
+        delegate.clearStatistics(name);
+    }
+
+    @Override
+    public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+        return new JitterRedisCacheWriter(delegate.withStatisticsCollector(cacheStatisticsCollector), singleFlightLoader);
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics(String cacheName) {
+        return delegate.getCacheStatistics(cacheName);
+    }
+
+    private Duration jitter(Duration ttl) {
+        // 没有配置过期时间的缓存保持永久有效
+        if (ttl == null || ttl.isZero() || ttl.isNegative()) {
+            return ttl;
+        }
+        return Duration.ofSeconds(singleFlightLoader.hardTtlSeconds(ttl.getSeconds()));
+    }
+}
@@ -0,0 +1,94 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.MenuCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内一级缓存，按区域（缓存名）划分，每个区域有容量和过期时间上限
+ * 数据变更时通过redis频道通知所有节点清除本地缓存
+ */
+@Component
+@Slf4j
+public class LocalCacheRegistry implements MessageListener {
+
+    @Autowired
+    private MenuCacheProperties menuCacheProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final ConcurrentMap<String, Cache<String, Object>> regions = new ConcurrentHashMap<>();
+
+    /**
+     * 获取某个区域的本地缓存，不存在时创建
+     * @param name 区域名
+     * @return
+     */
+    public Cache<String, Object> region(String name) {
+        return regions.computeIfAbsent(name, n -> Caffeine.newBuilder()
+                .maximumSize(menuCacheProperties.getLocalMaxSize())
+                .expireAfterWrite(menuCacheProperties.getLocalTtlSeconds(), TimeUnit.SECONDS)
+                .build());
+    }
+
+    /**
+     * 清除本节点和其它所有节点上的本地缓存
+     * @param region 区域名
+     * @param key 缓存key，为null时清空整个区域
+     */
+    public void invalidate(String region, String key) {
+        evictLocal(region, key);
+        JSONObject msg = new JSONObject();
+        msg.put("region", region);
+        msg.put("key", key);
+        try {
+            stringRedisTemplate.convertAndSend(menuCacheProperties.getInvalidateChannel(), msg.toJSONString());
+        } catch (Exception e) {
+            // 通知失败时其它节点最多在本地缓存过期后读到新数据
+            log.error("本地缓存失效通知发送失败：{}", msg, e);
+        }
+    }
+
+    /**
+     * 只清除本节点的本地缓存
+     * @param region 区域名
+     * @param key 缓存key，为null时清空整个区域
+     */
+    public void evictLocal(String region, String key) {
+        Cache<String, Object> cache = regions.get(region);
+        if (cache == null) {
+            return;
+        }
+        if (key == null) {
+            cache.invalidateAll();
+        } else {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * 收到其它节点（包括自己）发布的失效通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JSONObject msg = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+            evictLocal(msg.getString("region"), msg.getString("key"));
+        } catch (Exception e) {
+            log.error("本地缓存失效通知处理失败", e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.properties.MenuCacheProperties;
+import com.sky.vo.MenuItemVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 菜品、套餐的名称、价格、图片、状态缓存，加入购物车时使用，不再每次查询数据库
+ * 本地一级缓存 + redis hash（menu_item_catalog，field为dish_{id}或setmeal_{id}）
+ * hash在第一次写入时设置过期时间，之后的写入不续期，已下架、不再访问的条目随整个hash过期清理
+ * 菜品、套餐修改时由DishCacheAspect和SetmealServiceImpl清除
+ */
+@Component
+@Slf4j
+public class MenuItemCatalog {
+
+    private static final String REGION = "menu_item";
+    private static final String CATALOG_KEY = "menu_item_catalog";
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private LocalCacheRegistry localCacheRegistry;
+    @Autowired
+    private MenuCacheProperties menuCacheProperties;
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+
+    /**
+     * 查询菜品信息
+     * @param dishId
+     * @return 菜品不存在时返回null
+     */
+    public MenuItemVO getDish(Long dishId) {
+        return get("dish_" + dishId, () -> dishMapper.getMenuItemById(dishId));
+    }
+
+    /**
+     * 查询套餐信息
+     * @param setmealId
+     * @return 套餐不存在时返回null
+     */
+    public MenuItemVO getSetmeal(Long setmealId) {
+        return get("setmeal_" + setmealId, () -> setmealMapper.getMenuItemById(setmealId));
+    }
+
+    /**
+     * 清除菜品缓存
+     * @param dishIds
+     */
+    public void evictDishes(Collection<Long> dishIds) {
+        evict(dishIds.stream().map(id -> "dish_" + id).collect(Collectors.toList()));
+    }
+
+    /**
+     * 清除套餐缓存
+     * @param setmealIds
+     */
+    public void evictSetmeals(Collection<Long> setmealIds) {
+        evict(setmealIds.stream().map(id -> "setmeal_" + id).collect(Collectors.toList()));
+    }
+
+    private MenuItemVO get(String field, Supplier<MenuItemVO> loader) {
+        Cache<String, Object> local = localCacheRegistry.region(REGION);
+        MenuItemVO item = (MenuItemVO) local.getIfPresent(field);
+        if (item != null) {
+            return item;
+        }
+        Object cached = redisTemplate.opsForHash().get(CATALOG_KEY, field);
+        if (cached instanceof MenuItemVO) {
+            item = (MenuItemVO) cached;
+            local.put(field, item);
+            return item;
+        }
+        item = loader.get();
+        if (item != null) {
+            redisTemplate.opsForHash().put(CATALOG_KEY, field, item);
+            expireIfPersistent();
+            local.put(field, item);
+        }
+        return item;
+    }
+
+    /**
+     * hash还没有过期时间时（刚创建）设置过期时间
+     * 只在缓存未命中时调用；hash恰好在两次调用之间过期时，expire对不存在的key不生效，下次写入时重新设置
+     */
+    private void expireIfPersistent() {
+        Long ttl = redisTemplate.getExpire(CATALOG_KEY);
+        if (ttl != null && ttl == -1) {
+            redisTemplate.expire(CATALOG_KEY, menuCacheProperties.getCatalogTtlSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 立即清除一次；在事务中调用时事务提交后再清除一次，避免提交前被其它请求读到旧数据重新写入缓存
+     */
+    private void evict(List<String> fields) {
+        if (fields.isEmpty()) {
+            return;
+        }
+        doEvict(fields);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doEvict(fields);
+                }
+            });
+        }
+    }
+
+    private void doEvict(List<String> fields) {
+        try {
+            redisTemplate.opsForHash().delete(CATALOG_KEY, fields.toArray());
+        } catch (Exception e) {
+            log.error("菜品套餐缓存清除失败：{}", fields, e);
+        }
+        fields.forEach(field -> localCacheRegistry.invalidate(REGION, field));
+    }
+}
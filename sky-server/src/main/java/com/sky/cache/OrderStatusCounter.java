@@ -0,0 +1,157 @@
+package com.sky.cache;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.vo.OrderStatisticsVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商家端待接单、待派送、派送中数量的实时计数，保存在redis hash中，各节点共享
+ * 订单状态变更时增量维护（有事务时在事务提交后更新，回滚不会改动计数），读取计数不再扫描订单表
+ * 计数不存在时（首次启动、redis数据丢失）从数据库重建，另外定时和数据库对账校正偏差
+ */
+@Component
+@Slf4j
+public class OrderStatusCounter {
+
+    private static final String KEY = "order:status:count";
+    //只在计数存在时累加，计数不存在时等待对账重建，避免从0开始累加出错误的数量
+    private static final DefaultRedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end " +
+                    "for i = 1, #ARGV, 2 do redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+                    "return 1",
+            Long.class);
+    //整体覆盖计数
+    private static final DefaultRedisScript<Long> RESET_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('del', KEYS[1]) " +
+                    "for i = 1, #ARGV, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+                    "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+
+    /**
+     * 订单状态变更
+     * @param from 原状态，新建订单传null
+     * @param to 新状态
+     * @param count 订单数量
+     */
+    public void transition(Integer from, Integer to, long count) {
+        if (count <= 0 || (from != null && from.equals(to)) || (!isTracked(from) && !isTracked(to))) {
+            return;
+        }
+        List<String> args = new ArrayList<>(4);
+        if (isTracked(from)) {
+            args.add(from.toString());
+            args.add(Long.toString(-count));
+        }
+        if (isTracked(to)) {
+            args.add(to.toString());
+            args.add(Long.toString(count));
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(args);
+                }
+            });
+        } else {
+            increment(args);
+        }
+    }
+
+    /**
+     * 读取计数，计数不存在时从数据库重建
+     * @return
+     */
+    public OrderStatisticsVO get() {
+        Map<Object, Object> entries;
+        try {
+            entries = stringRedisTemplate.opsForHash().entries(KEY);
+        } catch (Exception e) {
+            log.error("订单状态计数读取失败，改为查询数据库", e);
+            return count();
+        }
+        if (entries == null || entries.isEmpty()) {
+            return reconcile();
+        }
+        OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
+        orderStatisticsVO.setToBeConfirmed(valueOf(entries.get(Orders.TO_BE_CONFIRMED.toString())));
+        orderStatisticsVO.setConfirmed(valueOf(entries.get(Orders.CONFIRMED.toString())));
+        orderStatisticsVO.setDeliveryInProgress(valueOf(entries.get(Orders.DELIVERY_IN_PROGRESS.toString())));
+        return orderStatisticsVO;
+    }
+
+    /**
+     * 按数据库中的数量覆盖计数
+     * @return
+     */
+    public OrderStatisticsVO reconcile() {
+        OrderStatisticsVO orderStatisticsVO = count();
+        try {
+            stringRedisTemplate.execute(RESET_SCRIPT, Collections.singletonList(KEY),
+                    Orders.TO_BE_CONFIRMED.toString(), orderStatisticsVO.getToBeConfirmed().toString(),
+                    Orders.CONFIRMED.toString(), orderStatisticsVO.getConfirmed().toString(),
+                    Orders.DELIVERY_IN_PROGRESS.toString(), orderStatisticsVO.getDeliveryInProgress().toString());
+        } catch (Exception e) {
+            log.error("订单状态计数重建失败", e);
+        }
+        return orderStatisticsVO;
+    }
+
+    private OrderStatisticsVO count() {
+        OrderStatisticsVO orderStatisticsVO = orderMapper.statistics();
+        if (orderStatisticsVO == null) {
+            orderStatisticsVO = new OrderStatisticsVO();
+        }
+        //没有对应状态的订单时sum为null
+        if (orderStatisticsVO.getToBeConfirmed() == null)
+            orderStatisticsVO.setToBeConfirmed(0);
+        if (orderStatisticsVO.getConfirmed() == null)
+            orderStatisticsVO.setConfirmed(0);
+        if (orderStatisticsVO.getDeliveryInProgress() == null)
+            orderStatisticsVO.setDeliveryInProgress(0);
+        return orderStatisticsVO;
+    }
+
+    private void increment(List<String> args) {
+        try {
+            stringRedisTemplate.execute(INCREMENT_SCRIPT, Collections.singletonList(KEY), args.toArray());
+        } catch (Exception e) {
+            // 计数更新失败时删除计数，下次读取时从数据库重建
+            log.error("订单状态计数更新失败", e);
+            try {
+                stringRedisTemplate.delete(KEY);
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private boolean isTracked(Integer status) {
+        return Orders.TO_BE_CONFIRMED.equals(status) || Orders.CONFIRMED.equals(status)
+                || Orders.DELIVERY_IN_PROGRESS.equals(status);
+    }
+
+    private Integer valueOf(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        //并发对账时可能短暂出现负数
+        return Math.max(Integer.parseInt(value.toString()), 0);
+    }
+}
@@ -0,0 +1,240 @@
+package com.sky.cache;
+
+import com.sky.properties.MenuCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 缓存未命中时的单飞加载，防止缓存过期或被清除时大量请求同时查库
+ * 本节点内同一个key只有一个线程加载，其它线程等待它的结果；
+ * 节点之间通过redis租约锁保证同一时间只有一个节点查库，没拿到锁的节点等待缓存被写入
+ * 另外提供缓存过期时间随机抖动和过期后短时间内返回旧数据、后台刷新（stale-while-revalidate）
+ */
+@Component
+@Slf4j
+public class SingleFlightLoader {
+
+    private static final String LEASE_PREFIX = "cache:lease:";
+    private static final String FRESH_PREFIX = "cache:fresh:";
+    //只释放自己持有的锁，避免加载超时后误删其它节点的锁
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    private static final long RETRY_INTERVAL_MILLIS = 50;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MenuCacheProperties menuCacheProperties;
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    //正在后台刷新的key，和inFlight分开：刷新的结果不返回给调用方，load()不能等待刷新
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    //后台刷新线程池，队列满时拒绝并丢弃本次刷新（见refreshAsync），下一次读取会再触发刷新
+    private final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(1, 4, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(100), r -> {
+                Thread thread = new Thread(r, "cache-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * 加载数据的回调，允许抛出任意异常（切面中直接调用joinPoint.proceed）
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws Throwable;
+    }
+
+    /**
+     * 单飞加载
+     * @param key 缓存key
+     * @param cached 重新读取缓存，返回null表示未命中；拿到锁后和等待锁期间用来检查其它节点是否已写入缓存
+     * @param loader 查库并写入缓存
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String key, Supplier<T> cached, Loader<T> loader) throws Throwable {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return (T) existing.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        try {
+            T value = loadWithLease(key, cached, loader);
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 后台刷新缓存，本节点已经在加载或刷新，或者其它节点持有锁时直接跳过
+     * 刷新不放入inFlight，同时发生的缓存未命中由load()自己拿锁加载
+     * @param key 缓存key
+     * @param loader 查库并写入缓存
+     */
+    public void refreshAsync(String key, Loader<?> loader) {
+        if (inFlight.containsKey(key) || !refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                String token = UUID.randomUUID().toString();
+                try {
+                    if (Boolean.FALSE.equals(tryAcquire(key, token))) {
+                        return;
+                    }
+                    try {
+                        loader.load();
+                    } finally {
+                        release(key, token);
+                    }
+                } catch (Throwable e) {
+                    log.error("缓存后台刷新失败，key={}", key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满，放弃本次刷新
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * 在基础过期时间上加随机抖动，避免同一时间写入的缓存同时过期；开启了旧数据窗口时再延长窗口的时间
+     * @param seconds 基础过期时间（秒）
+     * @return
+     */
+    public long hardTtlSeconds(long seconds) {
+        long jitter = menuCacheProperties.getTtlJitterSeconds();
+        return seconds + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0)
+                + Math.max(menuCacheProperties.getStaleSeconds(), 0);
+    }
+
+    /**
+     * 是否开启了stale-while-revalidate
+     */
+    public boolean isStaleEnabled() {
+        return menuCacheProperties.getStaleSeconds() > 0;
+    }
+
+    /**
+     * 写入缓存后记录数据的新鲜期，新鲜期过后缓存数据仍然可读，但会触发后台刷新
+     * @param key 缓存key
+     * @param seconds 新鲜期（秒）
+     */
+    public void markFresh(String key, long seconds) {
+        if (!isStaleEnabled() || seconds <= 0) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(FRESH_PREFIX + key, "1", seconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("缓存新鲜期标记写入失败，key={}", key, e);
+        }
+    }
+
+    /**
+     * 缓存数据是否已经过了新鲜期
+     * @param key 缓存key
+     * @return
+     */
+    public boolean isStale(String key) {
+        if (!isStaleEnabled()) {
+            return false;
+        }
+        try {
+            return !Boolean.TRUE.equals(stringRedisTemplate.hasKey(FRESH_PREFIX + key));
+        } catch (Exception e) {
+            log.error("缓存新鲜期标记读取失败，key={}", key, e);
+            return false;
+        }
+    }
+
+    private <T> T loadWithLease(String key, Supplier<T> cached, Loader<T> loader) throws Throwable {
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + menuCacheProperties.getLeaseWaitMillis();
+        while (true) {
+            Boolean acquired = tryAcquire(key, token);
+            if (acquired == null) {
+                // redis不可用，直接查库
+                return loader.load();
+            }
+            if (acquired) {
+                try {
+                    // 等锁期间其它节点可能已经写入了缓存
+                    T value = cached.get();
+                    return value != null ? value : loader.load();
+                } finally {
+                    release(key, token);
+                }
+            }
+            T value = cached.get();
+            if (value != null) {
+                return value;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                // 持有锁的节点迟迟没有写入缓存（可能已经宕机），不再等待
+                log.warn("等待缓存加载超时，直接查询数据库，key={}", key);
+                return loader.load();
+            }
+            Thread.sleep(RETRY_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * 尝试获取租约锁
+     * @return 是否获取成功，redis异常时返回null
+     */
+    private Boolean tryAcquire(String key, String token) {
+        try {
+            return Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(LEASE_PREFIX + key, token,
+                    menuCacheProperties.getLeaseMillis(), TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            log.error("缓存加载锁获取失败，key={}", key, e);
+            return null;
+        }
+    }
+
+    private void release(String key, String token) {
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(LEASE_PREFIX + key), token);
+        } catch (Exception e) {
+            log.error("缓存加载锁释放失败，key={}", key, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+}
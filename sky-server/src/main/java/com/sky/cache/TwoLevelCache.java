@@ -0,0 +1,113 @@
+package com.sky.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * 二级缓存：本地caffeine在前，redis在后
+ * 读先查本地，未命中再查redis并回填本地；写同时写两级；清除时通知所有节点清除本地缓存
+ * 带加载器读取（@Cacheable(sync = true)）时未命中走单飞加载，过了新鲜期的数据先返回再后台刷新
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final Cache redisCache;
+    private final LocalCacheRegistry localCacheRegistry;
+    private final SingleFlightLoader singleFlightLoader;
+    private final Duration ttl;
+
+    public TwoLevelCache(String name, Cache redisCache, LocalCacheRegistry localCacheRegistry,
+                         SingleFlightLoader singleFlightLoader, Duration ttl, boolean allowNullValues) {
+        super(allowNullValues);
+        this.name = name;
+        this.redisCache = redisCache;
+        this.localCacheRegistry = localCacheRegistry;
+        this.singleFlightLoader = singleFlightLoader;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        com.github.benmanes.caffeine.cache.Cache<String, Object> local = localCacheRegistry.region(name);
+        String localKey = String.valueOf(key);
+        Object value = local.getIfPresent(localKey);
+        if (value != null) {
+            return value;
+        }
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper == null) {
+            return null;
+        }
+        value = toStoreValue(wrapper.get());
+        local.put(localKey, value);
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = String.valueOf(key);
+        Object value = localCacheRegistry.region(name).getIfPresent(localKey);
+        if (value != null) {
+            return (T) fromStoreValue(value);
+        }
+        String flightKey = name + "::" + localKey;
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper != null) {
+            localCacheRegistry.region(name).put(localKey, toStoreValue(wrapper.get()));
+            if (singleFlightLoader.isStale(flightKey)) {
+                singleFlightLoader.refreshAsync(flightKey, () -> loadAndPut(key, valueLoader));
+            }
+            return (T) wrapper.get();
+        }
+        try {
+            // 返回ValueWrapper以区分缓存的null值和未命中
+            ValueWrapper loaded = singleFlightLoader.load(flightKey, () -> redisCache.get(key),
+                    () -> new SimpleValueWrapper(loadAndPut(key, valueLoader)));
+            return (T) loaded.get();
+        } catch (Throwable e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    private <T> T loadAndPut(Object key, Callable<T> valueLoader) throws Exception {
+        T value = valueLoader.call();
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        redisCache.put(key, value);
+        localCacheRegistry.region(name).put(String.valueOf(key), toStoreValue(value));
+        if (ttl != null && !ttl.isZero() && !ttl.isNegative()) {
+            singleFlightLoader.markFresh(name + "::" + key, ttl.getSeconds());
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        localCacheRegistry.invalidate(name, String.valueOf(key));
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCacheRegistry.invalidate(name, null);
+    }
+}
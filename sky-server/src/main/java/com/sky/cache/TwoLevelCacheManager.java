@@ -0,0 +1,49 @@
+package com.sky.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 在RedisCacheManager创建的每个缓存前面加一层本地缓存
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final RedisCacheManager redisCacheManager;
+    private final LocalCacheRegistry localCacheRegistry;
+    private final SingleFlightLoader singleFlightLoader;
+    private final boolean allowNullValues;
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager, LocalCacheRegistry localCacheRegistry,
+                                SingleFlightLoader singleFlightLoader, boolean allowNullValues) {
+        this.redisCacheManager = redisCacheManager;
+        this.localCacheRegistry = localCacheRegistry;
+        this.singleFlightLoader = singleFlightLoader;
+        this.allowNullValues = allowNullValues;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, n -> {
+            Cache redisCache = redisCacheManager.getCache(n);
+            if (redisCache == null) {
+                return null;
+            }
+            Duration ttl = redisCache instanceof RedisCache
+                    ? ((RedisCache) redisCache).getCacheConfiguration().getTtl() : null;
+            return new TwoLevelCache(n, redisCache, localCacheRegistry, singleFlightLoader, ttl, allowNullValues);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+}
@@ -0,0 +1,57 @@
+package com.sky.config;
+
+import com.sky.cache.JitterRedisCacheWriter;
+import com.sky.cache.LocalCacheRegistry;
+import com.sky.cache.SingleFlightLoader;
+import com.sky.cache.TwoLevelCacheManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+/**
+ * Spring Cache配置：本地caffeine + redis 二级缓存
+ * redis部分沿用spring.cache.redis.*配置
+ */
+@Configuration
+@Slf4j
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfiguration {
+
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory factory, CacheProperties cacheProperties,
+                                     LocalCacheRegistry localCacheRegistry, SingleFlightLoader singleFlightLoader) {
+        log.info("开始创建二级缓存管理器");
+        CacheProperties.Redis redisProperties = cacheProperties.getRedis();
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig();
+        if (redisProperties.getTimeToLive() != null) {
+            config = config.entryTtl(redisProperties.getTimeToLive());
+        }
+        if (redisProperties.getKeyPrefix() != null) {
+            config = config.prefixCacheNameWith(redisProperties.getKeyPrefix());
+        }
+        if (!redisProperties.isCacheNullValues()) {
+            config = config.disableCachingNullValues();
+        }
+        if (!redisProperties.isUseKeyPrefix()) {
+            config = config.disableKeyPrefix();
+        }
+        // allEntries清除时用scan代替keys，避免阻塞redis
+        RedisCacheWriter cacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(factory, BatchStrategies.scan(1000));
+        // 过期时间加随机抖动
+        cacheWriter = new JitterRedisCacheWriter(cacheWriter, singleFlightLoader);
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(cacheWriter)
+                .cacheDefaults(config)
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        return new TwoLevelCacheManager(redisCacheManager, localCacheRegistry, singleFlightLoader,
+                redisProperties.isCacheNullValues());
+    }
+}
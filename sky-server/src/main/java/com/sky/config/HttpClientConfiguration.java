@@ -0,0 +1,27 @@
+package com.sky.config;
+
+import com.sky.properties.HttpClientProperties;
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+//配置类用于创建HttpClientUtil共用的http连接池，应用关闭时释放连接
+public class HttpClientConfiguration {
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient(HttpClientProperties httpClientProperties) {
+        log.info("开始创建http连接池：{}", httpClientProperties);
+        CloseableHttpClient httpClient = HttpClientUtil.createHttpClient(httpClientProperties.getMaxTotal(),
+                httpClientProperties.getMaxPerRoute(),
+                httpClientProperties.getConnectTimeoutMillis(),
+                httpClientProperties.getConnectionRequestTimeoutMillis(),
+                httpClientProperties.getSocketTimeoutMillis(),
+                httpClientProperties.getKeepAliveMillis(),
+                httpClientProperties.getMaxIdleMillis());
+        HttpClientUtil.setHttpClient(httpClient);
+        return httpClient;
+    }
+}
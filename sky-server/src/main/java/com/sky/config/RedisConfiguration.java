@@ -6,24 +6,39 @@ import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sky.cache.LocalCacheRegistry;
+import com.sky.properties.MenuCacheProperties;
+import com.sky.properties.WebSocketProperties;
+import com.sky.websocket.ClusterBroadcaster;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.PatternTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.listener.adapter.MessageListenerAdapter;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.util.concurrent.Executors;
+
 @Configuration
 @Slf4j
 public class RedisConfiguration {
 
     @Autowired
     private OrderNotificationListener orderNotificationListener;
+    @Autowired
+    private LocalCacheRegistry localCacheRegistry;
+    @Autowired
+    private MenuCacheProperties menuCacheProperties;
+    @Autowired
+    private ClusterBroadcaster clusterBroadcaster;
+    @Autowired
+    private WebSocketProperties webSocketProperties;
 
     // 配置RedisTemplate的序列化器（通常在配置类中）
     @Bean
@@ -57,8 +72,18 @@ public class RedisConfiguration {
     public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
+        // 单线程按收到的顺序处理消息，默认每条消息一个新线程，无法保证websocket群发的顺序
+        container.setTaskExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "redis-listener");
+            thread.setDaemon(true);
+            return thread;
+        }));
         // 订阅 order:arrived 频道
         container.addMessageListener(new MessageListenerAdapter(orderNotificationListener), new PatternTopic("order:arrived"));
+        // 订阅本地缓存失效频道
+        container.addMessageListener(localCacheRegistry, new ChannelTopic(menuCacheProperties.getInvalidateChannel()));
+        // 订阅websocket集群群发频道
+        container.addMessageListener(clusterBroadcaster, new ChannelTopic(webSocketProperties.getClusterChannel()));
         return container;
     }
 }
@@ -0,0 +1,23 @@
+package com.sky.config;
+
+import com.sky.properties.SchedulingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+@Slf4j
+//配置类用于创建@Scheduled定时任务共用的线程池，默认只有一个线程，一个任务耗时过长会阻塞其它所有任务
+public class SchedulingConfiguration {
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(SchedulingProperties schedulingProperties) {
+        log.info("开始创建定时任务线程池：{}", schedulingProperties);
+        ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setPoolSize(schedulingProperties.getPoolSize());
+        taskScheduler.setThreadNamePrefix("sky-task-");
+        taskScheduler.setWaitForTasksToCompleteOnShutdown(true);
+        taskScheduler.setAwaitTerminationSeconds(schedulingProperties.getAwaitTerminationSeconds());
+        return taskScheduler;
+    }
+}
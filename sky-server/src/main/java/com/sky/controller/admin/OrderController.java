@@ -4,9 +4,9 @@ import com.sky.dto.OrdersCancelDTO;
 import com.sky.dto.OrdersConfirmDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersRejectionDTO;
-import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
+import com.sky.vo.OrderIntakeMetricsVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderVO;
 import io.swagger.annotations.Api;
@@ -24,7 +24,11 @@ public class OrderController {
 
     @ApiOperation("查询订单")
     @GetMapping("/conditionSearch")
-    public Result<PageResult> conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO) {
+    public Result conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO) {
+        // 传了cursor时使用游标分页
+        if (ordersPageQueryDTO.getCursor() != null) {
+            return Result.success(orderService.conditionSearchByCursor(ordersPageQueryDTO));
+        }
         return Result.success(orderService.conditionSearch(ordersPageQueryDTO));
     }
 
@@ -34,6 +38,12 @@ public class OrderController {
         return Result.success(orderService.statistics());
     }
 
+    @ApiOperation("排队下单统计")
+    @GetMapping("/intake/metrics")
+    public Result<OrderIntakeMetricsVO> intakeMetrics() {
+        return Result.success(orderService.intakeMetrics());
+    }
+
     @ApiOperation("查询订单详情")
     @GetMapping("/details/{id}")
     public Result<OrderVO> getByIdOrder(@PathVariable("id") Long id) {
@@ -10,6 +10,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -46,4 +47,14 @@ public class ReportController {
         log.info("订单数据统计：{},{}",begin,end);
         return Result.success(reportService.getOrderStatistics(begin,end));
     }
+
+    @PostMapping("/rebuild")
+    @ApiOperation("重建统计数据")
+    public Result rebuild(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end){
+        log.info("重建统计数据：{},{}",begin,end);
+        reportService.rebuildDailyStatistics(begin,end);
+        return Result.success();
+    }
 }
@@ -0,0 +1,25 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.vo.WebSocketMetricsVO;
+import com.sky.websocket.WebSocketSessionRegistry;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/admin/websocket")
+@Api(tags = "websocket连接相关接口")
+public class WebSocketController {
+    @Autowired
+    private WebSocketSessionRegistry webSocketSessionRegistry;
+
+    @GetMapping("/metrics")
+    @ApiOperation("websocket连接、发送队列和发送耗时统计")
+    public Result<WebSocketMetricsVO> metrics() {
+        return Result.success(webSocketSessionRegistry.metrics());
+    }
+}
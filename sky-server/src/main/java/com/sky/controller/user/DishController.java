@@ -1,6 +1,5 @@
 package com.sky.controller.user;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.sky.annotation.RedisCacheByCategoryId;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Dish;
@@ -11,7 +10,6 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -24,8 +22,6 @@ import java.util.List;
 public class DishController {
     @Autowired
     private DishService dishService;
-    @Autowired
-    private RedisTemplate redisTemplate;
 
     /**
      * 根据分类id查询菜品
@@ -35,32 +31,15 @@ public class DishController {
      */
     @GetMapping("/list")
     @ApiOperation("根据分类id查询菜品")
+    @RedisCacheByCategoryId
     public Result<List<DishVO>> list(Long categoryId) {
+        //缓存由DishCacheAspect处理，key规则：dish_分类id
+        Dish dish = new Dish();
+        dish.setCategoryId(categoryId);
+        dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
 
-        //构造redis中的key，规则：dish_分类id
-        String key = "dish_" + categoryId;
-        try {
-            //查询redis中是否存在菜品数据
-            List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
-            if (list != null && list.size() > 0) {
-                //如果存在，直接返回，无须查询数据库
-                return Result.success(list);
-            }
-
-            Dish dish = new Dish();
-            dish.setCategoryId(categoryId);
-            dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
-
-            //如果不存在，查询数据库，将查询到的数据放入redis中
-            list = dishService.listWithFlavor(dish);
-            redisTemplate.opsForValue().set(key, list);
-
-            return Result.success(list);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Result.error("查询失败");
-        }
-
+        List<DishVO> list = dishService.listWithFlavor(dish);
+        return Result.success(list);
     }
 
 }
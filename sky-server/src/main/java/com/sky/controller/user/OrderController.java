@@ -29,6 +29,12 @@ public class OrderController {
         OrderSubmitVO orderSubmitVO = orderService.submitOrder(ordersSubmitDTO);
         return Result.success(orderSubmitVO);
     }
+
+    @GetMapping("/ticket/{ticket}")
+    @ApiOperation("查询排队下单结果")
+    public Result<OrderSubmitVO> ticket(@PathVariable("ticket") String ticket) {
+        return Result.success(orderService.getSubmitTicket(ticket));
+    }
     @PutMapping("/payment")
     @ApiOperation("订单支付")
     public Result<OrderPaymentVO> payment(@RequestBody OrdersPaymentDTO ordersPaymentDTO) throws Exception {
@@ -39,9 +45,18 @@ public class OrderController {
     }
     @GetMapping("/historyOrders")
     @ApiOperation("历史订单查询")
-    public Result historyOrders(Integer page, Integer pageSize,Integer status) {
-        log.info("历史订单查询：{}", page, pageSize, status);
-        PageResult pageResult = orderService.pageQuery(page, pageSize, status);
+    public Result historyOrders(Integer page, Integer pageSize, Integer status, String cursor, Boolean withTotal) {
+        log.info("历史订单查询：{},{},{},{}", page, pageSize, status, cursor);
+        // 传了cursor时使用游标分页
+        if (cursor != null) {
+            OrdersPageQueryDTO ordersPageQueryDTO = new OrdersPageQueryDTO();
+            ordersPageQueryDTO.setPageSize(pageSize == null ? 0 : pageSize);
+            ordersPageQueryDTO.setStatus(status);
+            ordersPageQueryDTO.setCursor(cursor);
+            ordersPageQueryDTO.setWithTotal(withTotal);
+            return Result.success(orderService.historyByCursor(ordersPageQueryDTO));
+        }
+        PageResult pageResult = orderService.pageQuery(page, pageSize, status, withTotal);
         return Result.success(pageResult);
     }
     @GetMapping("/orderDetail/{id}")
@@ -22,10 +22,9 @@ public class ShoppingCartController {
     private ShoppingCartService shoppingCartService;
     @ApiOperation("添加购物车")
     @RequestMapping("/add")
-    public Result add(@RequestBody ShoppingCartDTO shoppingCartDTO){
+    public Result<List<ShoppingCart>> add(@RequestBody ShoppingCartDTO shoppingCartDTO){
         log.info("添加购物车");
-        shoppingCartService.add(shoppingCartDTO);
-        return Result.success();
+        return Result.success(shoppingCartService.add(shoppingCartDTO));
     }
     @ApiOperation("查看购物车")
     @RequestMapping("/list")
@@ -40,8 +39,7 @@ public class ShoppingCartController {
     }
     @ApiOperation("删除购物车中的一个商品")
     @RequestMapping("/sub")
-    public Result sub(@RequestBody ShoppingCartDTO shoppingCartDTO){
-        shoppingCartService.sub(shoppingCartDTO);
-        return Result.success();
+    public Result<List<ShoppingCart>> sub(@RequestBody ShoppingCartDTO shoppingCartDTO){
+        return Result.success(shoppingCartService.sub(shoppingCartDTO));
     }
 }
@@ -0,0 +1,100 @@
+package com.sky.interceptor;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.sky.properties.JwtProperties;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jwt令牌校验
+ * 秘钥字节只在启动时转换一次；校验通过的令牌按令牌的SHA-256缓存到令牌过期，
+ * 同一令牌的后续请求不再重复验签和解析
+ */
+@Component
+public class JwtTokenVerifier {
+
+    //没有设置过期时间的令牌最多缓存的时间
+    private static final long MAX_CACHE_MILLIS = TimeUnit.HOURS.toMillis(2);
+
+    @Autowired
+    private JwtProperties jwtProperties;
+
+    private byte[] adminSecretKey;
+    private byte[] userSecretKey;
+    private Cache<String, Claims> verified;
+
+    @PostConstruct
+    public void init() {
+        adminSecretKey = jwtProperties.getAdminSecretKey().getBytes(StandardCharsets.UTF_8);
+        userSecretKey = jwtProperties.getUserSecretKey().getBytes(StandardCharsets.UTF_8);
+        verified = Caffeine.newBuilder()
+                .maximumSize(jwtProperties.getVerifiedCacheSize())
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        Date exp = claims.getExpiration();
+                        long millis = exp == null ? MAX_CACHE_MILLIS
+                                : Math.min(exp.getTime() - System.currentTimeMillis(), MAX_CACHE_MILLIS);
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 校验管理端令牌
+     * @param token
+     * @return
+     */
+    public Claims verifyAdmin(String token) {
+        return verify("admin:", adminSecretKey, token);
+    }
+
+    /**
+     * 校验用户端令牌
+     * @param token
+     * @return
+     */
+    public Claims verifyUser(String token) {
+        return verify("user:", userSecretKey, token);
+    }
+
+    private Claims verify(String scope, byte[] secretKey, String token) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("令牌为空");
+        }
+        // 管理端和用户端秘钥不同，缓存key带上端的前缀
+        return verified.get(scope + sha256(token), key -> JwtUtil.parseJWT(secretKey, token));
+    }
+
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
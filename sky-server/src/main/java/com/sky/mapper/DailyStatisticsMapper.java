@@ -0,0 +1,101 @@
+package com.sky.mapper;
+
+import com.sky.dto.DailyReportDTO;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 按天预聚合的销售数据 daily_statistics，表结构见sql/daily_statistics.sql
+ * 主键(stat_date, status)：status = 0 的行在下单时按下单日期累加订单数，并记录当天新增用户数；
+ * status = 已完成 的行在订单完成时按下单日期累加有效订单数和营业额，和直接统计orders表的口径一致
+ */
+@Mapper
+public interface DailyStatisticsMapper {
+
+    /**
+     * 下单时累加订单数
+     * @param statDate 下单日期
+     * @param orderCount 订单数
+     */
+    @Insert("insert into daily_statistics (stat_date, status, turnover, order_count, valid_order_count, new_user_count) " +
+            "values (#{statDate}, 0, 0, #{orderCount}, 0, 0) " +
+            "on duplicate key update order_count = order_count + values(order_count)")
+    void addOrders(LocalDate statDate, Integer orderCount);
+
+    /**
+     * 订单完成时累加一笔有效订单
+     * @param statDate 下单日期
+     * @param completed 已完成状态
+     * @param turnover 订单金额
+     */
+    @Insert("insert into daily_statistics (stat_date, status, turnover, order_count, valid_order_count, new_user_count) " +
+            "values (#{statDate}, #{completed}, #{turnover}, 0, 1, 0) " +
+            "on duplicate key update turnover = turnover + values(turnover), " +
+            "valid_order_count = valid_order_count + 1")
+    void addCompletedOrder(LocalDate statDate, Integer completed, BigDecimal turnover);
+
+    /**
+     * 新用户注册时累加一人
+     * @param statDate 注册日期
+     */
+    @Insert("insert into daily_statistics (stat_date, status, turnover, order_count, valid_order_count, new_user_count) " +
+            "values (#{statDate}, 0, 0, 0, 0, 1) " +
+            "on duplicate key update new_user_count = new_user_count + 1")
+    void addNewUser(LocalDate statDate);
+
+    /**
+     * 按天读取区间内的预聚合数据，没有数据的日期不会返回
+     * @param begin
+     * @param end
+     * @param completed
+     * @return
+     */
+    @Select("select stat_date as date, sum(case when status = #{completed} then turnover else 0 end) as turnover, " +
+            "sum(order_count) as orderCount, sum(valid_order_count) as validOrderCount, " +
+            "sum(new_user_count) as newUserCount from daily_statistics " +
+            "where stat_date between #{begin} and #{end} group by stat_date")
+    List<DailyReportDTO> getDailyReport(LocalDate begin, LocalDate end, Integer completed);
+
+    /**
+     * 删除区间内的预聚合数据，重建前调用
+     * @param begin
+     * @param end
+     */
+    @Delete("delete from daily_statistics where stat_date between #{begin} and #{end}")
+    void deleteByDate(LocalDate begin, LocalDate end);
+
+    /**
+     * 从orders重建区间内每天的订单数（所有状态）和已完成订单的有效订单数、营业额
+     * @param beginTime
+     * @param endTime
+     * @param completed
+     */
+    @Insert("insert into daily_statistics (stat_date, status, turnover, order_count, valid_order_count, new_user_count) " +
+            "select date(order_time), 0, 0, count(id), 0, 0 from orders " +
+            "where order_time between #{beginTime} and #{endTime} " +
+            "group by date(order_time) " +
+            "union all " +
+            "select date(order_time), #{completed}, sum(amount), 0, count(id), 0 from orders " +
+            "where order_time between #{beginTime} and #{endTime} and status = #{completed} " +
+            "group by date(order_time)")
+    void rebuildOrders(LocalDateTime beginTime, LocalDateTime endTime, Integer completed);
+
+    /**
+     * 从user重建区间内每天的新增用户数，和订单数共用status = 0的行
+     * @param beginTime
+     * @param endTime
+     */
+    @Insert("insert into daily_statistics (stat_date, status, turnover, order_count, valid_order_count, new_user_count) " +
+            "select date(create_time), 0, 0, 0, 0, count(id) from user " +
+            "where create_time between #{beginTime} and #{endTime} " +
+            "group by date(create_time) " +
+            "on duplicate key update new_user_count = values(new_user_count)")
+    void rebuildUsers(LocalDateTime beginTime, LocalDateTime endTime);
+}
@@ -29,4 +29,11 @@ public interface DishFlavorMapper {
      */
     @Select("select * from dish_flavor where dish_id = #{dishId}")
     List<DishFlavor> getByDishId(Long dishId);
+
+    /**
+     * 根据一批菜品id查询对应的口味数据
+     * @param dishIds
+     * @return
+     */
+    List<DishFlavor> getByDishIds(List<Long> dishIds);
 }
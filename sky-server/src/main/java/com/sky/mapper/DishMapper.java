@@ -9,6 +9,7 @@ import com.sky.entity.DishFlavor;
 import com.sky.entity.OrderDetail;
 import com.sky.enumeration.OperationType;
 import com.sky.vo.DishVO;
+import com.sky.vo.MenuItemVO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
@@ -45,4 +46,12 @@ public interface DishMapper {
 
     List<Dish> getBySetmealId(Long id);
 
+    /**
+     * 查询加入购物车需要的菜品信息
+     * @param id
+     * @return
+     */
+    @Select("select id, name, price, image, status from dish where id = #{id}")
+    MenuItemVO getMenuItemById(Long id);
+
 }
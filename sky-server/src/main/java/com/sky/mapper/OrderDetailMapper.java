@@ -12,4 +12,11 @@ public interface OrderDetailMapper {
 
     @Select("select * from order_detail where order_id = #{orderId}")
     List<OrderDetail> getByOrderId(Long orderId);
+
+    /**
+     * 根据一批订单id查询订单明细
+     * @param orderIds
+     * @return
+     */
+    List<OrderDetail> getByOrderIds(List<Long> orderIds);
 }
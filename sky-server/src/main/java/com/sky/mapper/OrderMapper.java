@@ -10,7 +10,6 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +21,12 @@ public interface OrderMapper {
      */
     void insert(Orders order);
 
+    /**
+     * 批量插入订单数据，回填各订单的id
+     * @param ordersList
+     */
+    void insertBatch(List<Orders> ordersList);
+
     /**
      * 根据订单号查询订单
      * @param orderNumber
@@ -36,17 +41,51 @@ public interface OrderMapper {
     void update(Orders orders);
 
     Page<Orders> pageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
+
+    /**
+     * 游标分页查询，按下单时间、id倒序，最多返回pageSize + 1条
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    List<Orders> cursorQuery(OrdersPageQueryDTO ordersPageQueryDTO);
+
+    /**
+     * 统计分页查询条件下的总记录数
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    Long countPageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
     @Select("select * from orders where id = #{id}")
     Orders getById(Long id);
     @Update("update orders set status = #{cancelled} where id = #{id}")
     void updateStatus(Long id, Integer cancelled);
 
+    /**
+     * 根据id批量查询订单
+     * @param ids
+     * @return
+     */
+    List<Orders> getByIds(List<Long> ids);
+
+    /**
+     * 订单仍处于expectedStatus时才修改状态（以及取消原因、取消时间、送达时间）
+     * @param orders
+     * @param expectedStatus
+     * @return 修改的行数，0表示订单状态已经变化
+     */
+    int updateStatusIfMatch(Orders orders, Integer expectedStatus);
+
+    /**
+     * 按id顺序分批查询指定状态的订单id和下单时间
+     * @param status
+     * @param lastId 上一批最后一个订单的id
+     * @param limit
+     * @return
+     */
+    @Select("select id, order_time from orders where status = #{status} and id > #{lastId} order by id limit #{limit}")
+    List<Orders> listByStatusAfter(Integer status, Long lastId, int limit);
 
     OrderStatisticsVO statistics();
-    @Select("select count(id) from orders where status = 5 and order_time < #{begin}")
-    int completedTimeoutOrders();
-    @Update("update orders set status = #{deliveryInProgress} where status = 4 and order_time < #{begin}")
-    void updateStatus4Completion(Integer deliveryInProgress, LocalDateTime begin);
 
     Integer countByMap(Map map);
 }
@@ -0,0 +1,64 @@
+package com.sky.mapper;
+
+import com.sky.entity.OrderOutbox;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface OrderOutboxMapper {
+
+    /**
+     * 批量写入待发送的消息
+     * @param outboxList
+     */
+    void insertBatch(List<OrderOutbox> outboxList);
+
+    /**
+     * 认领一批到期待发送的消息
+     * @param owner 认领标识，每次认领使用不同的值
+     * @param now
+     * @param leaseUntil 认领到期时间
+     * @param limit
+     * @return 认领到的数量
+     */
+    @Update("update order_outbox set owner = #{owner}, lease_until = #{leaseUntil} " +
+            "where status = 0 and next_retry_time <= #{now} and (lease_until is null or lease_until < #{now}) " +
+            "order by id limit #{limit}")
+    int claim(String owner, LocalDateTime now, LocalDateTime leaseUntil, Integer limit);
+
+    /**
+     * 查询本次认领的消息
+     * @param owner 每次认领使用不同的值
+     * @return
+     */
+    @Select("select * from order_outbox where status = 0 and owner = #{owner} order by id")
+    List<OrderOutbox> getClaimed(String owner);
+
+    /**
+     * 标记为已发送
+     * @param ids
+     */
+    void markSent(List<Long> ids);
+
+    /**
+     * 发送失败，记录重试次数和下次发送时间，释放认领
+     * @param outbox
+     */
+    @Update("update order_outbox set status = #{status}, attempts = #{attempts}, next_retry_time = #{nextRetryTime}, " +
+            "owner = null, lease_until = null where id = #{id}")
+    void markRetry(OrderOutbox outbox);
+
+    /**
+     * 删除一批创建时间早于指定时间的已发送消息
+     * @param before
+     * @param limit
+     * @return 删除的行数
+     */
+    @Delete("delete from order_outbox where status = 1 and create_time < #{before} limit #{limit}")
+    int deleteSentBefore(LocalDateTime before, Integer limit);
+}
@@ -1,26 +1,57 @@
 package com.sky.mapper;
 
+import com.sky.dto.DailyReportDTO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
 import java.time.LocalDateTime;
-import java.util.Map;
+import java.util.List;
 
 @Mapper
 
 public interface ReportMapper {
     /**
-     * 营业额统计
+     * 按天统计时间区间内的营业额，没有订单的日期不会返回
      * @param beginTime
      * @param endTime
      * @param completed
      * @return
      */
-    @Select("select sum(amount) from orders where order_time between #{beginTime} and #{endTime} and status = #{completed}")
-    Double getTurnoverStatistics(LocalDateTime beginTime, LocalDateTime endTime, Integer completed);
-    @Select("select count(id) from user where create_time between #{beginTime} and #{endTime}")
-    Integer getNewUserCount(LocalDateTime beginTime, LocalDateTime endTime);
-    @Select("select count(id) from user where create_time <= #{endTime}")
-    Integer getTotalUserCount(LocalDateTime endTime);
+    @Select("select date(order_time) as date, sum(amount) as turnover from orders " +
+            "where order_time between #{beginTime} and #{endTime} and status = #{completed} " +
+            "group by date(order_time)")
+    List<DailyReportDTO> getDailyTurnover(LocalDateTime beginTime, LocalDateTime endTime, Integer completed);
+
+    /**
+     * 按天统计时间区间内的订单总数和有效订单数
+     * @param beginTime
+     * @param endTime
+     * @param completed
+     * @return
+     */
+    @Select("select date(order_time) as date, count(id) as orderCount, " +
+            "sum(case when status = #{completed} then 1 else 0 end) as validOrderCount from orders " +
+            "where order_time between #{beginTime} and #{endTime} " +
+            "group by date(order_time)")
+    List<DailyReportDTO> getDailyOrderCount(LocalDateTime beginTime, LocalDateTime endTime, Integer completed);
+
+    /**
+     * 按天统计时间区间内的新增用户数
+     * @param beginTime
+     * @param endTime
+     * @return
+     */
+    @Select("select date(create_time) as date, count(id) as newUserCount from user " +
+            "where create_time between #{beginTime} and #{endTime} " +
+            "group by date(create_time)")
+    List<DailyReportDTO> getDailyNewUserCount(LocalDateTime beginTime, LocalDateTime endTime);
+
+    /**
+     * 统计某个时间点之前注册的用户总数，作为累计用户数的起点
+     * @param beginTime
+     * @return
+     */
+    @Select("select count(id) from user where create_time < #{beginTime}")
+    Integer getUserCountBefore(LocalDateTime beginTime);
 
 }
@@ -6,6 +6,7 @@ import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.entity.Setmeal;
 import com.sky.enumeration.OperationType;
 import com.sky.vo.DishItemVO;
+import com.sky.vo.MenuItemVO;
 import com.sky.vo.SetmealVO;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
@@ -57,6 +58,14 @@ public interface SetmealMapper {
     @Select("select * from setmeal where id = #{id}")
     Setmeal getById(Long id);
 
+    /**
+     * 查询加入购物车需要的套餐信息
+     * @param id
+     * @return
+     */
+    @Select("select id, name, price, image, status from setmeal where id = #{id}")
+    MenuItemVO getMenuItemById(Long id);
+
     /**
      * 根据id删除套餐
      * @param setmealId
@@ -2,7 +2,9 @@ package com.sky.mapper;
 
 
 import com.sky.entity.ShoppingCart;
+import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
 
@@ -18,4 +20,36 @@ public interface ShoppingCartMapper {
     void deleteByUserId(Long userId);
 
     void deleteById(ShoppingCart shoppingCart);
+
+    /**
+     * 按id扣减商品数量
+     * @param shoppingCart
+     */
+    @Update("update shopping_cart set number = number - #{number} where id = #{id}")
+    void subNumberById(ShoppingCart shoppingCart);
+
+    /**
+     * 删除用户购物车中数量已经减到0的商品
+     * @param userId
+     */
+    @Delete("delete from shopping_cart where user_id = #{userId} and number <= 0")
+    void deleteEmptyByUserId(Long userId);
+
+    /**
+     * 按用户和商品（菜品口味或套餐）更新价格、名称、图片，写穿缓存中新增的商品没有id
+     * @param shoppingCart
+     */
+    void updateItem(ShoppingCart shoppingCart);
+
+    /**
+     * 批量插入购物车数据
+     * @param shoppingCartList
+     */
+    void insertBatch(List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 删除多个用户的购物车数据
+     * @param userIds
+     */
+    void deleteByUserIds(List<Long> userIds);
 }
@@ -0,0 +1,14 @@
+package com.sky.service;
+
+/**
+ * 订单号生成，订单号为24位数字：时间 + 序号 + 用户id后4位
+ */
+public interface OrderNoGenerator {
+
+    /**
+     * 生成订单号
+     * @param userId 下单用户id
+     * @return
+     */
+    String next(Long userId);
+}
@@ -1,7 +1,9 @@
 package com.sky.service;
 
 import com.sky.dto.*;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
+import com.sky.vo.OrderIntakeMetricsVO;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
@@ -9,6 +11,19 @@ import com.sky.vo.OrderVO;
 
 public interface OrderService {
     OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO);
+
+    /**
+     * 查询排队下单的处理结果
+     * @param ticket 下单凭证
+     * @return
+     */
+    OrderSubmitVO getSubmitTicket(String ticket);
+
+    /**
+     * 排队下单的队列和处理统计
+     * @return
+     */
+    OrderIntakeMetricsVO intakeMetrics();
     /**
      * 订单支付
      * @param ordersPaymentDTO
@@ -22,9 +37,23 @@ public interface OrderService {
      */
     void paySuccess(String outTradeNo);
 
-    PageResult pageQuery(Integer page, Integer pageSize, Integer status);
+    PageResult pageQuery(Integer page, Integer pageSize, Integer status, Boolean withTotal);
     PageResult conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 当前用户的历史订单，游标分页
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    CursorPageResult<OrderVO> historyByCursor(OrdersPageQueryDTO ordersPageQueryDTO);
+
+    /**
+     * 管理端订单搜索，游标分页
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    CursorPageResult<OrderVO> conditionSearchByCursor(OrdersPageQueryDTO ordersPageQueryDTO);
+
     OrderVO getByIdOrder(Long id);
 
     void cancel(Long id);
@@ -19,4 +19,11 @@ public interface ReportService{
     UserReportVO getUserStatistics(LocalDate begin, LocalDate end);
 
     OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end);
+
+    /**
+     * 根据历史订单和用户重建按天预聚合的统计数据
+     * @param begin 开始日期
+     * @param end 结束日期
+     */
+    void rebuildDailyStatistics(LocalDate begin, LocalDate end);
 }
@@ -6,11 +6,29 @@ import com.sky.entity.ShoppingCart;
 import java.util.List;
 
 public interface ShoppingCartService {
-    void add(ShoppingCartDTO shoppingCartDTO);
+    List<ShoppingCart> add(ShoppingCartDTO shoppingCartDTO);
 
     List<ShoppingCart> list();
 
+    /**
+     * 读取指定用户的完整购物车（下单时使用，读取为准的数据源）
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
     void clean();
 
-    void sub(ShoppingCartDTO shoppingCartDTO);
+    /**
+     * 从指定用户的购物车中扣减已下单的商品（没有登录上下文的线程中使用）
+     * @param userId
+     * @param items 下单时读取的购物车商品
+     */
+    void remove(Long userId, List<ShoppingCart> items);
+
+    List<ShoppingCart> sub(ShoppingCartDTO shoppingCartDTO);
+
+    void addAll(List<ShoppingCart> shoppingCartList);
+
+    void flushDirtyCarts();
 }
@@ -15,6 +15,7 @@ import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealDishMapper;
 import com.sky.result.PageResult;
 import com.sky.service.DishService;
+import com.sky.utils.BatchLoaderUtil;
 import com.sky.vo.DishVO;
 import com.sky.vo.OrderVO;
 import org.springframework.beans.BeanUtils;
@@ -113,14 +114,13 @@ public class DishServiceimpl implements DishService {
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             BeanUtils.copyProperties(d,dishVO);
-
-            //根据菜品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
-
-            dishVO.setFlavors(flavors);
             dishVOList.add(dishVO);
         }
 
+        //一次查询出分类下所有菜品的口味
+        BatchLoaderUtil.attach(dishVOList, DishVO::getId, dishFlavorMapper::getByDishIds,
+                DishFlavor::getDishId, DishVO::setFlavors);
+
         return dishVOList;
     }
 
@@ -4,7 +4,10 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cache.MenuItemCatalog;
+import com.sky.cache.OrderStatusCounter;
 import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.*;
 import com.sky.entity.*;
@@ -12,23 +15,40 @@ import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.properties.CheckoutProperties;
+import com.sky.properties.ReportProperties;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
+import com.sky.service.OrderNoGenerator;
 import com.sky.service.OrderService;
+import com.sky.service.ShoppingCartService;
+import com.sky.task.OrderIntakeTask;
+import com.sky.task.OrderOutboxTask;
+import com.sky.task.OrderTask;
+import com.sky.utils.BatchLoaderUtil;
+import com.sky.utils.CursorUtil;
 import com.sky.utils.WeChatPayUtil;
+import com.sky.vo.MenuItemVO;
+import com.sky.vo.OrderIntakeMetricsVO;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.WebSocketTopics;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -37,7 +57,7 @@ public class OrderServiceimpl implements OrderService {
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartService shoppingCartService;
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
@@ -47,24 +67,48 @@ public class OrderServiceimpl implements OrderService {
     @Autowired
     private UserMapper userMapper;
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate; // 用于发布来单提醒
-    @Autowired
     private WebSocketServer webSocketServer;
+    @Autowired
+    private DailyStatisticsMapper dailyStatisticsMapper;
+    @Autowired
+    private OrderNoGenerator orderNoGenerator;
+    @Autowired
+    private OrderOutboxMapper orderOutboxMapper;
+    @Autowired
+    private OrderOutboxTask orderOutboxTask;
+    @Autowired
+    private MenuItemCatalog menuItemCatalog;
+    @Autowired
+    private CheckoutProperties checkoutProperties;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private OrderIntakeTask orderIntakeTask;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderTask orderTask;
+    @Autowired
+    private ReportProperties reportProperties;
 
-    //生成订单号
-    private String generateOrderNo() {
-        // 1. 获取当前时间戳（yyyyMMddHHmmssSSS，精确到毫秒）
-        String timeStr = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS"));
-        // 2. 生成3位随机数
-        String randomStr = String.valueOf(new Random().nextInt(900) + 100);
-        // 3. 获取用户ID后4位（补0到4位）
-        Long userId = BaseContext.getCurrentId();
-        String userIdSuffix = String.format("%04d", userId % 10000);
-        // 4. 拼接订单号
-        return timeStr + randomStr + userIdSuffix;
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * 开启排队下单时启动写入线程，设置超时订单的处理方法
+     */
+    @PostConstruct
+    public void startTasks() {
+        orderIntakeTask.start(this::saveOrders);
+        orderTask.start(ids -> timeoutOrders(ids, Orders.PENDING_PAYMENT, Orders.CANCELLED),
+                ids -> timeoutOrders(ids, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED));
     }
 
-    @Transactional(rollbackFor = Exception.class)
+    /**
+     * 用户下单
+     * 购物车从购物车服务读取（redis模式下直接读redis，默认模式读mysql），明细和总金额按菜品套餐缓存中的当前价格重新计算，
+     * 校验都在事务外完成，事务中只插入订单、明细和发件箱
+     */
     public OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
         //判断购物车和地址簿是否存在
         AddressBook addressBook = addressBookMapper.getById(ordersSubmitDTO.getAddressBookId());
@@ -72,54 +116,41 @@ public class OrderServiceimpl implements OrderService {
             throw new AddressBookBusinessException("地址簿不存在");
         }
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(userId);
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        // 读取为准的购物车：redis模式读redis，默认模式读mysql（缓存中可能只有部分商品）
+        List<ShoppingCart> shoppingCartList = shoppingCartService.list(userId);
         if (shoppingCartList == null || shoppingCartList.isEmpty()) {
             throw new ShoppingCartBusinessException("购物车为空");
         }
+        //订单明细数据，价格以菜品套餐的当前价格为准
+        List<OrderDetail> orderDetailList = priceCart(shoppingCartList);
+        BigDecimal amount = BigDecimal.ZERO;
+        for (OrderDetail orderDetail : orderDetailList) {
+            amount = amount.add(orderDetail.getAmount().multiply(BigDecimal.valueOf(orderDetail.getNumber())));
+        }
+        if (ordersSubmitDTO.getPackAmount() != null) {
+            amount = amount.add(BigDecimal.valueOf(ordersSubmitDTO.getPackAmount()));
+        }
+        amount = amount.add(checkoutProperties.getDeliveryFee());
+
         //订单数据
         Orders orders = new Orders();
         BeanUtils.copyProperties(ordersSubmitDTO, orders);
+        orders.setAmount(amount);
         orders.setOrderTime(LocalDateTime.now());
         // 用户下单即视为已支付：设置支付状态/方式/结账时间、并将订单置为待接单（与 paySuccess 保持一致）
         orders.setPayStatus(Orders.PAID);
         orders.setPayMethod(ordersSubmitDTO.getPayMethod());
         orders.setCheckoutTime(LocalDateTime.now());
         orders.setStatus(Orders.TO_BE_CONFIRMED);
-        orders.setNumber(generateOrderNo());
+        orders.setNumber(orderNoGenerator.next(userId));
         orders.setUserId(userId);
         orders.setAddress(addressBook.getDetail());
-        orderMapper.insert(orders);
-        //订单明细数据
-        List<OrderDetail> orderDetailList = new ArrayList<>();
-        for (ShoppingCart cart : shoppingCartList) {
-            //订单明细数据插入
-            OrderDetail orderDetail = new OrderDetail();
-            BeanUtils.copyProperties(cart, orderDetail);
-            orderDetail.setName(cart.getName());
-            orderDetail.setOrderId(orders.getId());
-            orderDetailList.add(orderDetail);
-        }
-        orderDetailMapper.insertBatch(orderDetailList);
-        //清空购物车
-        shoppingCartMapper.deleteByUserId(userId);
 
-        // 发布来单提醒，消息包含订单关键信息（前端或店铺端可订阅频道 order:arrived）
-        try {
-            JSONObject msg = new JSONObject();
-            msg.put("id", orders.getId());
-            msg.put("number", orders.getNumber());
-            msg.put("amount", orders.getAmount());
-            msg.put("userName", orders.getUserName());
-            msg.put("address", orders.getAddress());
-            msg.put("orderTime", orders.getOrderTime());
-            msg.put("status", orders.getStatus());
-            redisTemplate.convertAndSend("order:arrived", msg.toJSONString());
-        } catch (Exception ex) {
-            // 发布失败不影响下单成功，记录日志（可以改为使用 logger）
-            System.err.println("publish order arrived failed: " + ex.getMessage());
+        // 排队下单：放入队列后立即返回下单凭证，由后台线程批量写入
+        if (orderIntakeTask.isEnabled()) {
+            return orderIntakeTask.submit(orders, orderDetailList, shoppingCartList);
         }
+        saveOrders(Collections.singletonList(new OrderIntakeTask.Ticket(null, orders, orderDetailList, shoppingCartList)));
 
         return OrderSubmitVO.builder()
                 .id(orders.getId())
@@ -129,6 +160,135 @@ public class OrderServiceimpl implements OrderService {
                 .build();
     }
 
+    /**
+     * 查询排队下单的处理结果
+     * @param ticket 下单凭证
+     * @return
+     */
+    public OrderSubmitVO getSubmitTicket(String ticket) {
+        OrderSubmitVO orderSubmitVO = orderIntakeTask.getTicket(BaseContext.getCurrentId(), ticket);
+        if (orderSubmitVO == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_TICKET_NOT_FOUND);
+        }
+        return orderSubmitVO;
+    }
+
+    public OrderIntakeMetricsVO intakeMetrics() {
+        return orderIntakeTask.metrics();
+    }
+
+    /**
+     * 在一个短事务中写入一批订单、订单明细和来单提醒，并从各用户的购物车中扣减已下单的商品（redis模式下在事务提交后扣减）
+     * 同步下单和排队下单的写入线程共用
+     */
+    private void saveOrders(List<OrderIntakeTask.Ticket> tickets) {
+        List<Orders> ordersList = new ArrayList<>(tickets.size());
+        for (OrderIntakeTask.Ticket ticket : tickets) {
+            ordersList.add(ticket.getOrders());
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (ordersList.size() == 1) {
+                orderMapper.insert(ordersList.get(0));
+            } else {
+                orderMapper.insertBatch(ordersList);
+            }
+            List<OrderDetail> orderDetailList = new ArrayList<>();
+            for (OrderIntakeTask.Ticket ticket : tickets) {
+                for (OrderDetail orderDetail : ticket.getOrderDetails()) {
+                    orderDetail.setOrderId(ticket.getOrders().getId());
+                    orderDetailList.add(orderDetail);
+                }
+            }
+            orderDetailMapper.insertBatch(orderDetailList);
+            // 只扣减计价时读取的商品，下单后新加入购物车的商品保留
+            for (OrderIntakeTask.Ticket ticket : tickets) {
+                shoppingCartService.remove(ticket.getOrders().getUserId(), ticket.getShoppingCarts());
+            }
+            // 来单提醒写入发件箱，事务提交后发送
+            addArrivedNotification(ordersList);
+            recordPlaced(ordersList);
+            // 按新订单的状态分别计数
+            Map<Integer, Long> countByStatus = ordersList.stream()
+                    .collect(Collectors.groupingBy(Orders::getStatus, Collectors.counting()));
+            countByStatus.forEach((orderStatus, count) -> orderStatusCounter.transition(null, orderStatus, count));
+            // 待付款的订单登记付款超时
+            for (Orders orders : ordersList) {
+                if (Orders.PENDING_PAYMENT.equals(orders.getStatus())) {
+                    orderTask.schedule(OrderTask.PAYMENT, orders.getId(), orders.getOrderTime());
+                }
+            }
+        });
+    }
+
+    /**
+     * 处理一批超时订单，订单仍处于from状态时才修改为to状态，付款超时的订单取消，派送超时的订单完成
+     * @param ids 到期的订单id
+     * @param from 超时前的状态
+     * @param to 超时后的状态
+     * @return 实际修改的订单数
+     */
+    private int timeoutOrders(List<Long> ids, Integer from, Integer to) {
+        Integer count = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            int updated = 0;
+            for (Orders ordersDB : orderMapper.getByIds(ids)) {
+                if (!from.equals(ordersDB.getStatus())) {
+                    continue;
+                }
+                Orders orders = new Orders();
+                orders.setId(ordersDB.getId());
+                orders.setStatus(to);
+                if (Orders.CANCELLED.equals(to)) {
+                    orders.setCancelReason(MessageConstant.ORDER_PAYMENT_TIMEOUT);
+                    orders.setCancelTime(now);
+                } else {
+                    orders.setDeliveryTime(now);
+                }
+                if (orderMapper.updateStatusIfMatch(orders, from) > 0) {
+                    if (Orders.COMPLETED.equals(to)) {
+                        recordCompleted(ordersDB);
+                    }
+                    updated++;
+                }
+            }
+            orderStatusCounter.transition(from, to, updated);
+            return updated;
+        });
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 按菜品套餐缓存生成订单明细
+     * 菜品套餐已删除或停售时拒绝下单；购物车中的价格和当前价格不一致时拒绝下单，由用户刷新购物车后重新确认
+     */
+    private List<OrderDetail> priceCart(List<ShoppingCart> shoppingCartList) {
+        List<OrderDetail> orderDetailList = new ArrayList<>(shoppingCartList.size());
+        for (ShoppingCart cart : shoppingCartList) {
+            MenuItemVO item = cart.getDishId() != null
+                    ? menuItemCatalog.getDish(cart.getDishId())
+                    : menuItemCatalog.getSetmeal(cart.getSetmealId());
+            if (item == null) {
+                throw new OrderBusinessException(MessageConstant.MENU_ITEM_NOT_FOUND);
+            }
+            if (!StatusConstant.ENABLE.equals(item.getStatus())) {
+                throw new OrderBusinessException(MessageConstant.MENU_ITEM_DISABLED);
+            }
+            if (cart.getAmount() == null || item.getPrice().compareTo(cart.getAmount()) != 0) {
+                throw new OrderBusinessException(MessageConstant.MENU_ITEM_PRICE_CHANGED);
+            }
+            orderDetailList.add(OrderDetail.builder()
+                    .name(item.getName())
+                    .image(item.getImage())
+                    .dishId(cart.getDishId())
+                    .setmealId(cart.getSetmealId())
+                    .dishFlavor(cart.getDishFlavor())
+                    .number(cart.getNumber())
+                    .amount(item.getPrice())
+                    .build());
+        }
+        return orderDetailList;
+    }
+
     /**
      * 订单支付
      *
@@ -169,6 +329,7 @@ public class OrderServiceimpl implements OrderService {
      *
      * @param outTradeNo 订单号
      */
+    @Transactional(rollbackFor = Exception.class)
     public void paySuccess(String outTradeNo) {
 
         // 根据订单号查询订单
@@ -193,35 +354,41 @@ public class OrderServiceimpl implements OrderService {
                 .build();
 
         orderMapper.update(orders);
-        // 发布来单提醒，推送信息type，openid，content
-        Map map = new HashMap();
-        map.put("type", 1);//1代表来单提醒 2代表客户催单
-        map.put("orderId", ordersDB.getId());
-        map.put("content", "您有新的订单，请及时处理" + outTradeNo);
-        String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        orderStatusCounter.transition(ordersDB.getStatus(), Orders.TO_BE_CONFIRMED, 1);
+        orderTask.cancel(OrderTask.PAYMENT, ordersDB.getId());
+        // 来单提醒写入发件箱，事务提交后发送
+        ordersDB.setStatus(Orders.TO_BE_CONFIRMED);
+        addArrivedNotification(Collections.singletonList(ordersDB));
     }
 
     //历史订单查询
-    public PageResult pageQuery(Integer page, Integer pageSize, Integer status) {
-        //设置分页
-        PageHelper.startPage(page, pageSize);
+    public PageResult pageQuery(Integer page, Integer pageSize, Integer status, Boolean withTotal) {
+        //设置分页，不需要总数时不执行count查询（total为-1）
+        PageHelper.startPage(page, pageSize, !Boolean.FALSE.equals(withTotal));
         OrdersPageQueryDTO ordersPageQueryDTO = new OrdersPageQueryDTO();
         ordersPageQueryDTO.setStatus(status);
         ordersPageQueryDTO.setUserId(BaseContext.getCurrentId());
         //分页条件查询
         Page<Orders> pageInfo = orderMapper.pageQuery(ordersPageQueryDTO);
+        return new PageResult(pageInfo.getTotal(), toOrderVOList(pageInfo));
+    }
+
+    /**
+     * 转换为OrderVO，当前页所有订单的明细一次查询出来
+     */
+    private List<OrderVO> toOrderVOList(List<Orders> ordersList) {
         List<OrderVO> list = new ArrayList<>();
-        if (pageInfo != null && pageInfo.getTotal() > 0) {
-            for (Orders orders : pageInfo) {
-                Long orderId = orders.getId();
-                OrderVO orderVO = new OrderVO();
-                BeanUtils.copyProperties(orders, orderVO);
-                orderVO.setOrderDetailList(orderDetailMapper.getByOrderId(orderId));
-                list.add(orderVO);
-            }
+        if (ordersList == null || ordersList.isEmpty()) {
+            return list;
+        }
+        for (Orders orders : ordersList) {
+            OrderVO orderVO = new OrderVO();
+            BeanUtils.copyProperties(orders, orderVO);
+            list.add(orderVO);
         }
-        return new PageResult(pageInfo.getTotal(), list);
+        BatchLoaderUtil.attach(list, OrderVO::getId, orderDetailMapper::getByOrderIds,
+                OrderDetail::getOrderId, OrderVO::setOrderDetailList);
+        return list;
     }
 
     public OrderVO getByIdOrder(Long id) {
@@ -236,6 +403,7 @@ public class OrderServiceimpl implements OrderService {
         return orderVO;
     }
 
+    @Transactional(rollbackFor = Exception.class)
     public void cancel(Long id) {
         Orders orders = orderMapper.getById(id);
         if (orders == null)
@@ -248,8 +416,15 @@ public class OrderServiceimpl implements OrderService {
             throw new OrderBusinessException("订单已取消，不能取消");
         if (orders.getPayStatus() == Orders.PAID)
             throw new OrderBusinessException("已支付订单不能取消");
-        if (orders.getStatus() == orders.PENDING_PAYMENT || orders.getStatus() == orders.TO_BE_CONFIRMED)
-            orderMapper.updateStatus(id, Orders.CANCELLED);
+        if (orders.getStatus() == orders.PENDING_PAYMENT || orders.getStatus() == orders.TO_BE_CONFIRMED) {
+            // 支付超时任务可能同时取消了订单，只有状态仍是查询到的状态时才修改
+            Orders cancelled = Orders.builder().id(id).status(Orders.CANCELLED).build();
+            if (orderMapper.updateStatusIfMatch(cancelled, orders.getStatus()) == 0) {
+                throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+            }
+            orderStatusCounter.transition(orders.getStatus(), Orders.CANCELLED, 1);
+            orderTask.cancel(OrderTask.PAYMENT, id);
+        }
 
     }
 
@@ -266,29 +441,58 @@ public class OrderServiceimpl implements OrderService {
             shoppingCart.setCreateTime(LocalDateTime.now());
             return shoppingCart;
         }).collect(Collectors.toList());
-        for (ShoppingCart shoppingCart : shoppingCartList)
-            shoppingCartMapper.insert(shoppingCart);
+        shoppingCartService.addAll(shoppingCartList);
 
     }
 
     public PageResult<OrderVO> conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO) {
-        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
+        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize(),
+                !Boolean.FALSE.equals(ordersPageQueryDTO.getWithTotal()));
         Page<Orders> pageInfo = orderMapper.pageQuery(ordersPageQueryDTO);
-        List<OrderVO> list = new ArrayList<>();
-        if (pageInfo != null && pageInfo.getTotal() > 0) {
-            for (Orders orders : pageInfo) {
-                Long orderId = orders.getId();
-                OrderVO orderVO = new OrderVO();
-                BeanUtils.copyProperties(orders, orderVO);
-                orderVO.setOrderDetailList(orderDetailMapper.getByOrderId(orderId));
-                list.add(orderVO);
+        return new PageResult(pageInfo.getTotal(), toOrderVOList(pageInfo));
+    }
+
+    public CursorPageResult<OrderVO> historyByCursor(OrdersPageQueryDTO ordersPageQueryDTO) {
+        ordersPageQueryDTO.setUserId(BaseContext.getCurrentId());
+        return cursorQuery(ordersPageQueryDTO);
+    }
+
+    public CursorPageResult<OrderVO> conditionSearchByCursor(OrdersPageQueryDTO ordersPageQueryDTO) {
+        return cursorQuery(ordersPageQueryDTO);
+    }
+
+    /**
+     * 按（下单时间, id）游标分页，翻页越深不会越慢；只有要求时才统计总数
+     */
+    private CursorPageResult<OrderVO> cursorQuery(OrdersPageQueryDTO ordersPageQueryDTO) {
+        int pageSize = ordersPageQueryDTO.getPageSize();
+        ordersPageQueryDTO.setPageSize(pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE));
+        String cursor = ordersPageQueryDTO.getCursor();
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                ordersPageQueryDTO.setCursorTime(CursorUtil.decodeTime(cursor));
+                ordersPageQueryDTO.setCursorId(CursorUtil.decodeId(cursor));
+            } catch (RuntimeException e) {
+                throw new OrderBusinessException(MessageConstant.ORDER_CURSOR_INVALID);
             }
         }
-        return new PageResult(pageInfo.getTotal(), list);
+        List<Orders> ordersList = orderMapper.cursorQuery(ordersPageQueryDTO);
+        String nextCursor = null;
+        if (ordersList.size() > ordersPageQueryDTO.getPageSize()) {
+            ordersList = ordersList.subList(0, ordersPageQueryDTO.getPageSize());
+            Orders last = ordersList.get(ordersList.size() - 1);
+            nextCursor = CursorUtil.encode(last.getOrderTime(), last.getId());
+        }
+        Long total = Boolean.TRUE.equals(ordersPageQueryDTO.getWithTotal())
+                ? orderMapper.countPageQuery(ordersPageQueryDTO) : null;
+        return new CursorPageResult<OrderVO>(toOrderVOList(ordersList), nextCursor, total);
     }
 
+    /**
+     * 各状态订单数量，读取redis中增量维护的计数
+     */
     public OrderStatisticsVO statistics() {
-        return orderMapper.statistics();
+        return orderStatusCounter.get();
     }
 
     public void confirm(OrdersConfirmDTO ordersConfirmDTO) {
@@ -302,10 +506,16 @@ public class OrderServiceimpl implements OrderService {
             throw new OrderBusinessException("订单已完成，不能接单");
         if (Objects.equals(orders.getStatus(), Orders.CONFIRMED))
             throw new OrderBusinessException("订单已确认，不能接单");
-        if (orders.getPayStatus() == Orders.PAID)
-            orderMapper.updateStatus(id, Orders.CONFIRMED);
+        if (orders.getPayStatus() == Orders.PAID) {
+            Orders confirmed = Orders.builder().id(id).status(Orders.CONFIRMED).build();
+            if (orderMapper.updateStatusIfMatch(confirmed, orders.getStatus()) == 0) {
+                throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+            }
+            orderStatusCounter.transition(orders.getStatus(), Orders.CONFIRMED, 1);
+        }
     }
 
+    @Transactional(rollbackFor = Exception.class)
     public void rejection(OrdersRejectionDTO ordersRejectionDTO) {
         Long id = ordersRejectionDTO.getId();
         Orders ordersDB = orderMapper.getById(id);
@@ -323,10 +533,14 @@ public class OrderServiceimpl implements OrderService {
             orders.setStatus(Orders.CANCELLED);
             orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
             orders.setCancelTime(LocalDateTime.now());
-            orderMapper.update(orders);
+            if (orderMapper.updateStatusIfMatch(orders, ordersDB.getStatus()) == 0) {
+                throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+            }
+            orderStatusCounter.transition(ordersDB.getStatus(), Orders.CANCELLED, 1);
         }
     }
 
+    @Transactional(rollbackFor = Exception.class)
     public void cancel(OrdersCancelDTO ordersCancelDTO) {
         Long id = ordersCancelDTO.getId();
         Orders ordersDB = orderMapper.getById(id);
@@ -342,7 +556,11 @@ public class OrderServiceimpl implements OrderService {
             orders.setStatus(Orders.CANCELLED);
             orders.setCancelReason(ordersCancelDTO.getCancelReason());
             orders.setCancelTime(LocalDateTime.now());
-            orderMapper.update(orders);
+            // 派送中的订单可能同时被派送超时任务完成，只有状态仍是查询到的状态时才修改
+            if (orderMapper.updateStatusIfMatch(orders, ordersDB.getStatus()) == 0) {
+                throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+            }
+            orderStatusCounter.transition(ordersDB.getStatus(), Orders.CANCELLED, 1);
         }
     }
 
@@ -361,9 +579,15 @@ public class OrderServiceimpl implements OrderService {
         // 更新订单状态,状态转为派送中
         orders.setStatus(Orders.DELIVERY_IN_PROGRESS);
 
-        orderMapper.update(orders);
+        if (orderMapper.updateStatusIfMatch(orders, Orders.CONFIRMED) == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        orderStatusCounter.transition(Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS, 1);
+        // 登记派送超时，超时后自动完成
+        orderTask.schedule(OrderTask.DELIVERY, id, LocalDateTime.now());
     }
 
+    @Transactional(rollbackFor = Exception.class)
     public void complete(Long id) {
         // 根据id查询订单
         Orders ordersDB = orderMapper.getById(id);
@@ -379,7 +603,13 @@ public class OrderServiceimpl implements OrderService {
         orders.setStatus(Orders.COMPLETED);
         orders.setDeliveryTime(LocalDateTime.now());
 
-        orderMapper.update(orders);
+        // 派送超时任务可能已经自动完成了订单，只有仍在派送中时才修改、计数和累加营业额
+        if (orderMapper.updateStatusIfMatch(orders, Orders.DELIVERY_IN_PROGRESS) == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        orderStatusCounter.transition(Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, 1);
+        orderTask.cancel(OrderTask.DELIVERY, id);
+        recordCompleted(ordersDB);
     }
 
     public void reminder(Long id) {
@@ -397,6 +627,82 @@ public class OrderServiceimpl implements OrderService {
         map.put("orderId", ordersDB.getId());
         map.put("content", "订单催单：订单号" + ordersDB.getNumber());
         String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        // 只推送给门店的商家端
+        webSocketServer.sendToTopic(WebSocketTopics.shop(WebSocketTopics.DEFAULT_SHOP), null, json);
+    }
+
+    /**
+     * 来单提醒写入发件箱（每个订单redis频道order:arrived和websocket推送各一条），和订单在同一个事务中
+     * 事务提交后触发发送，事务回滚时不会发出通知
+     */
+    private void addArrivedNotification(List<Orders> ordersList) {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        List<OrderOutbox> outboxList = new ArrayList<>(ordersList.size() * 2);
+        for (Orders orders : ordersList) {
+            JSONObject msg = new JSONObject();
+            msg.put("id", orders.getId());
+            msg.put("number", orders.getNumber());
+            msg.put("amount", orders.getAmount());
+            msg.put("userName", orders.getUserName());
+            msg.put("address", orders.getAddress());
+            msg.put("orderTime", orders.getOrderTime());
+            msg.put("status", orders.getStatus());
+
+            Map map = new HashMap();
+            map.put("type", 1);//1代表来单提醒 2代表客户催单
+            map.put("orderId", orders.getId());
+            map.put("content", "您有新的订单，请及时处理" + orders.getNumber());
+
+            outboxList.add(newOutbox(orders.getId(), OrderOutbox.REDIS, msg.toJSONString(), now));
+            outboxList.add(newOutbox(orders.getId(), OrderOutbox.WEBSOCKET, JSON.toJSONString(map), now));
+        }
+        orderOutboxMapper.insertBatch(outboxList);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    orderOutboxTask.trigger();
+                }
+            });
+        }
+    }
+
+    private OrderOutbox newOutbox(Long orderId, String destination, String payload, LocalDateTime now) {
+        return OrderOutbox.builder()
+                .orderId(orderId)
+                .destination(destination)
+                .payload(payload)
+                .status(OrderOutbox.PENDING)
+                .attempts(0)
+                .nextRetryTime(now)
+                .createTime(now)
+                .build();
+    }
+
+    /**
+     * 下单时按下单日期累加预聚合的订单数
+     * 没有开启预聚合时不写daily_statistics，开启后由/admin/report/rebuild回填
+     */
+    private void recordPlaced(List<Orders> ordersList) {
+        if (!reportProperties.isRollupEnabled()) {
+            return;
+        }
+        Map<LocalDate, Integer> countByDate = new TreeMap<>();
+        for (Orders orders : ordersList) {
+            countByDate.merge(orders.getOrderTime().toLocalDate(), 1, Integer::sum);
+        }
+        countByDate.forEach(dailyStatisticsMapper::addOrders);
+    }
+
+    /**
+     * 订单完成时按下单日期累加预聚合的有效订单数和营业额
+     */
+    private void recordCompleted(Orders ordersDB) {
+        if (!reportProperties.isRollupEnabled()) {
+            return;
+        }
+        dailyStatisticsMapper.addCompletedOrder(ordersDB.getOrderTime().toLocalDate(), Orders.COMPLETED,
+                ordersDB.getAmount());
     }
 }
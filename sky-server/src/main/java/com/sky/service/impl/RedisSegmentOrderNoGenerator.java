@@ -0,0 +1,88 @@
+package com.sky.service.impl;
+
+import com.sky.properties.OrderNoProperties;
+import com.sky.service.OrderNoGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis号段分配订单号：yyyyMMddHHmmss(14位) + 秒内序号(6位) + 用户id后4位
+ * 每秒一个计数器，节点每次用INCRBY申请一段序号在本地发放，用完再申请，不需要配置节点编号
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "sky.order-no", name = "type", havingValue = "redis")
+public class RedisSegmentOrderNoGenerator implements OrderNoGenerator {
+
+    private static final String KEY_PREFIX = "order_no:seq:";
+    private static final DateTimeFormatter SECOND_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneId.systemDefault());
+    private static final long MAX_SEQUENCE = 999999;
+    // 计数器只在当前秒使用，过期时间留出时钟误差
+    private static final long KEY_EXPIRE_SECONDS = 60;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderNoProperties orderNoProperties;
+
+    private long currentSecond = -1;
+    private String currentPrefix;
+    // 当前号段中下一个可用序号和最后一个序号
+    private long nextSequence;
+    private long endSequence = -1;
+
+    @Override
+    public synchronized String next(Long userId) {
+        long second = Math.max(System.currentTimeMillis() / 1000, currentSecond);
+        if (second != currentSecond) {
+            switchSecond(second);
+        }
+        while (nextSequence > endSequence) {
+            allocate();
+        }
+        StringBuilder sb = new StringBuilder(24).append(currentPrefix);
+        SnowflakeOrderNoGenerator.appendPadded(sb, nextSequence++, 6);
+        SnowflakeOrderNoGenerator.appendPadded(sb, userId % 10000, 4);
+        return sb.toString();
+    }
+
+    private void switchSecond(long second) {
+        currentSecond = second;
+        currentPrefix = SECOND_FORMATTER.format(Instant.ofEpochSecond(second));
+        nextSequence = 0;
+        endSequence = -1;
+    }
+
+    /**
+     * 从redis申请当前秒的下一个号段，当前秒的序号已经用完时切换到下一秒
+     */
+    private void allocate() {
+        int segmentSize = orderNoProperties.getSegmentSize();
+        String key = KEY_PREFIX + currentPrefix;
+        Long end = stringRedisTemplate.opsForValue().increment(key, segmentSize);
+        if (end == null) {
+            throw new IllegalStateException("订单号号段申请失败");
+        }
+        if (end <= segmentSize) {
+            stringRedisTemplate.expire(key, KEY_EXPIRE_SECONDS, TimeUnit.SECONDS);
+        }
+        // redis中的计数从1开始，序号从0开始
+        long start = end - segmentSize;
+        if (start > MAX_SEQUENCE) {
+            log.warn("{}秒内的订单号已用完，使用下一秒", currentPrefix);
+            switchSecond(currentSecond + 1);
+            return;
+        }
+        nextSequence = start;
+        endSequence = Math.min(end - 1, MAX_SEQUENCE);
+    }
+}
@@ -1,16 +1,20 @@
 package com.sky.service.impl;
 
+import com.sky.constant.MessageConstant;
+import com.sky.dto.DailyReportDTO;
 import com.sky.entity.Orders;
-import com.sky.mapper.OrderMapper;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.DailyStatisticsMapper;
 import com.sky.mapper.ReportMapper;
+import com.sky.properties.ReportProperties;
 import com.sky.service.ReportService;
 import com.sky.vo.OrderReportVO;
 import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
 import org.apache.commons.lang.StringUtils;
-import org.apache.poi.util.StringUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -19,32 +23,30 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
+/**
+ * 数据统计
+ * 每个指标整个时间区间只查询一次（按天group by），没有数据的日期在内存中补0
+ * 开启预聚合时读取daily_statistics，统计口径和直接查询orders、user表一致
+ */
 @Service
 public class ReportServiceimpl implements ReportService {
     @Autowired
     private ReportMapper reportMapper;
     @Autowired
-    private OrderMapper orderMapper;
+    private DailyStatisticsMapper dailyStatisticsMapper;
+    @Autowired
+    private ReportProperties reportProperties;
+
     @Override
     public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
         //根据时间区间计算每天的日期、营业额
-        List<LocalDate> dateList = new ArrayList<>();
-        while (!begin.isAfter(end)) {
-            dateList.add(begin);
-            begin = begin.plusDays(1);
-        }
-        List<Double> turnoverList = new ArrayList<>();
-        for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            //查询date日期的营业额
-            Double turnover = reportMapper.getTurnoverStatistics(beginTime, endTime, Orders.COMPLETED);
-            if (turnover == null) {
-                turnover = 0.0;
-            }
-            turnoverList.add(turnover);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
+        List<DailyReportDTO> rows = reportProperties.isRollupEnabled()
+                ? dailyStatisticsMapper.getDailyReport(begin, end, Orders.COMPLETED)
+                : reportMapper.getDailyTurnover(beginOf(begin), endOf(end), Orders.COMPLETED);
+        List<Double> turnoverList = fillDays(dateList, rows, DailyReportDTO::getTurnover, 0.0);
         return TurnoverReportVO
                 .builder()
                 .dateList(StringUtils.join(dateList, ","))
@@ -55,23 +57,19 @@ public class ReportServiceimpl implements ReportService {
     @Override
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
         //根据时间区间计算每天的日期、新增用户数、总用户数
-        List<LocalDate> dateList = new ArrayList<>();
-        while (!begin.isAfter(end)) {
-            dateList.add(begin);
-            begin = begin.plusDays(1);
-        }
-        List<Integer> newUserList = new ArrayList<>();
+        List<LocalDate> dateList = getDateList(begin, end);
+        List<DailyReportDTO> rows = reportProperties.isRollupEnabled()
+                ? dailyStatisticsMapper.getDailyReport(begin, end, Orders.COMPLETED)
+                : reportMapper.getDailyNewUserCount(beginOf(begin), endOf(end));
+        List<Integer> newUserList = fillDays(dateList, rows, DailyReportDTO::getNewUserCount, 0);
+
+        //总用户数 = 区间开始前的用户数 + 每天新增用户数的累加
+        Integer totalUserCount = reportMapper.getUserCountBefore(beginOf(begin));
+        if (totalUserCount == null)
+            totalUserCount = 0;
         List<Integer> totalUserList = new ArrayList<>();
-        for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            Integer newUserCount = reportMapper.getNewUserCount(beginTime, endTime);
-            if (newUserCount == null)
-                newUserCount = 0;
-            newUserList.add(newUserCount);
-            Integer totalUserCount = reportMapper.getTotalUserCount(endTime);
-            if (totalUserCount == null)
-                totalUserCount = 0;
+        for (Integer newUserCount : newUserList) {
+            totalUserCount += newUserCount;
             totalUserList.add(totalUserCount);
         }
         return UserReportVO.builder()
@@ -89,39 +87,22 @@ public class ReportServiceimpl implements ReportService {
      */
     public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
         //存放从begin到end之间的每天对应的日期
-        List<LocalDate> dateList = new ArrayList<>();
-
-        dateList.add(begin);
-
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
 
+        //一次查询出区间内每天的订单总数和有效订单数
+        List<DailyReportDTO> rows = reportProperties.isRollupEnabled()
+                ? dailyStatisticsMapper.getDailyReport(begin, end, Orders.COMPLETED)
+                : reportMapper.getDailyOrderCount(beginOf(begin), endOf(end), Orders.COMPLETED);
         //存放每天的订单总数
-        List<Integer> orderCountList = new ArrayList<>();
+        List<Integer> orderCountList = fillDays(dateList, rows, DailyReportDTO::getOrderCount, 0);
         //存放每天的有效订单数
-        List<Integer> validOrderCountList = new ArrayList<>();
-
-        //遍历dateList集合，查询每天的有效订单数和订单总数
-        for (LocalDate date : dateList) {
-            //查询每天的订单总数 select count(id) from orders where order_time > ? and order_time < ?
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            Integer orderCount = getOrderCount(beginTime, endTime, null);
-
-            //查询每天的有效订单数 select count(id) from orders where order_time > ? and order_time < ? and status = 5
-            Integer validOrderCount = getOrderCount(beginTime, endTime, Orders.COMPLETED);
-
-            orderCountList.add(orderCount);
-            validOrderCountList.add(validOrderCount);
-        }
+        List<Integer> validOrderCountList = fillDays(dateList, rows, DailyReportDTO::getValidOrderCount, 0);
 
         //计算时间区间内的订单总数量
-        Integer totalOrderCount = orderCountList.stream().reduce(Integer::sum).get();
+        Integer totalOrderCount = orderCountList.stream().reduce(0, Integer::sum);
 
         //计算时间区间内的有效订单数量
-        Integer validOrderCount = validOrderCountList.stream().reduce(Integer::sum).get();
+        Integer validOrderCount = validOrderCountList.stream().reduce(0, Integer::sum);
 
         Double orderCompletionRate = 0.0;
         if(totalOrderCount != 0){
@@ -138,12 +119,59 @@ public class ReportServiceimpl implements ReportService {
                 .orderCompletionRate(orderCompletionRate)
                 .build();
     }
-    private Integer getOrderCount(LocalDateTime begin, LocalDateTime end, Integer status){
-        Map map = new HashMap();
-        map.put("begin",begin);
-        map.put("end",end);
-        map.put("status",status);
 
-        return orderMapper.countByMap(map);
+    /**
+     * 根据orders、user表重建区间内的预聚合数据
+     * @param begin
+     * @param end
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void rebuildDailyStatistics(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || begin.isAfter(end)) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_INVALID);
+        }
+        dailyStatisticsMapper.deleteByDate(begin, end);
+        dailyStatisticsMapper.rebuildOrders(beginOf(begin), endOf(end), Orders.COMPLETED);
+        dailyStatisticsMapper.rebuildUsers(beginOf(begin), endOf(end));
+    }
+
+    /**
+     * 生成begin到end之间（包含两端）的每一天
+     */
+    private List<LocalDate> getDateList(LocalDate begin, LocalDate end) {
+        List<LocalDate> dateList = new ArrayList<>();
+        while (!begin.isAfter(end)) {
+            dateList.add(begin);
+            begin = begin.plusDays(1);
+        }
+        return dateList;
+    }
+
+    /**
+     * 把按天聚合的查询结果铺到每一天上，查询结果中没有的日期（或值为null）使用默认值
+     */
+    private <T> List<T> fillDays(List<LocalDate> dateList, List<DailyReportDTO> rows,
+                                 Function<DailyReportDTO, T> getter, T defaultValue) {
+        Map<LocalDate, DailyReportDTO> rowMap = new HashMap<>();
+        if (rows != null) {
+            for (DailyReportDTO row : rows) {
+                rowMap.put(row.getDate(), row);
+            }
+        }
+        List<T> list = new ArrayList<>(dateList.size());
+        for (LocalDate date : dateList) {
+            DailyReportDTO row = rowMap.get(date);
+            T value = row == null ? null : getter.apply(row);
+            list.add(value == null ? defaultValue : value);
+        }
+        return list;
+    }
+
+    private LocalDateTime beginOf(LocalDate date) {
+        return LocalDateTime.of(date, LocalTime.MIN);
+    }
+
+    private LocalDateTime endOf(LocalDate date) {
+        return LocalDateTime.of(date, LocalTime.MAX);
     }
 }
@@ -1,49 +1,140 @@
 package com.sky.service.impl;
 
+import com.sky.cache.MenuItemCatalog;
+import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
-import com.sky.entity.Setmeal;
 import com.sky.entity.ShoppingCart;
-import com.sky.mapper.DishMapper;
-import com.sky.mapper.SetmealMapper;
+import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.ShoppingCartProperties;
 import com.sky.service.ShoppingCartService;
-import com.sky.vo.DishVO;
+import com.sky.vo.MenuItemVO;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * 购物车
+ * 默认模式：mysql为准，redis做写穿缓存
+ * redis模式（sky.cart.redis-authoritative）：redis为准，数量修改由lua脚本原子完成，
+ * 修改过的用户记录在待同步zset中，由ShoppingCartTask批量同步到mysql
+ * 同一菜品的不同口味分别作为一个商品
+ * 返回购物车时按菜品套餐的当前价格刷新并保存，下单时按保存的价格校验
+ */
 @Service
+@Slf4j
 public class ShoppingCartServiceimpl implements ShoppingCartService {
     @Autowired
     private ShoppingCartMapper shoppingCartMapper;
     @Autowired
-    private DishMapper dishMapper;
-    @Autowired
-    private SetmealMapper setmealMapper;
+    private MenuItemCatalog menuItemCatalog;
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ShoppingCartProperties shoppingCartProperties;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 标记购物车已经从mysql完整加载到redis的字段
+    private static final String LOADED_FIELD = "_loaded";
+    private static final String LOADED_VALUE = "1";
+    // 待同步到mysql的用户，分数为修改次数
+    private static final String DIRTY_KEY = "shopping_cart:dirty";
+    private static final String FLUSH_LOCK_KEY = "shopping_cart:flush:lock";
+    private static final long FLUSH_LOCK_SECONDS = 60;
+    // 商品不存在
+    private static final long ITEM_ABSENT = -1;
+    // 购物车还没有加载到redis
+    private static final long CART_NOT_LOADED = -2;
 
-    // 统一的购物车过期时间（分钟）
-    private static final long CART_EXPIRE_MINUTES = 30L;
+    // 加减数量的脚本同时返回修改后的整个购物车，一次往返完成
+    private static final DefaultRedisScript<List> ADD_SCRIPT = script("lua/cart_add.lua", List.class);
+    private static final DefaultRedisScript<List> SUB_SCRIPT = script("lua/cart_sub.lua", List.class);
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = script("lua/cart_load.lua", Long.class);
+    private static final DefaultRedisScript<Long> CLEAR_SCRIPT = script("lua/cart_clear.lua", Long.class);
+    private static final DefaultRedisScript<Long> REMOVE_SCRIPT = script("lua/cart_remove.lua", Long.class);
+    private static final DefaultRedisScript<Long> FLUSHED_SCRIPT = script("lua/cart_flushed.lua", Long.class);
+    private static final DefaultRedisScript<Long> REPRICE_SCRIPT = script("lua/cart_reprice.lua", Long.class);
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    /**
+     * 启动时预先加载购物车脚本，之后的调用直接使用evalsha
+     */
+    @PostConstruct
+    public void loadScripts() {
+        if (!shoppingCartProperties.isRedisAuthoritative()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+                for (RedisScript<?> script : Arrays.asList(ADD_SCRIPT, SUB_SCRIPT, LOAD_SCRIPT, CLEAR_SCRIPT, REMOVE_SCRIPT, FLUSHED_SCRIPT,
+                        REPRICE_SCRIPT)) {
+                    connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 预加载失败不影响使用，第一次调用时会自动加载
+            log.error("购物车脚本预加载失败", e);
+        }
+    }
 
     /**
      * 添加商品到购物车（菜品或套餐）
+     * @return 添加后的购物车
      */
-    public void add(ShoppingCartDTO shoppingCartDTO) {
+    public List<ShoppingCart> add(ShoppingCartDTO shoppingCartDTO) {
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         shoppingCart.setUserId(BaseContext.getCurrentId());
 
+        if (shoppingCartProperties.isRedisAuthoritative()) {
+            String field = itemField(shoppingCart);
+            // 已有商品只需一次脚本调用，商品不存在时再查询名称、价格
+            CartResult result = addNumber(shoppingCart.getUserId(), field, 1, null);
+            if (result.status == ITEM_ABSENT) {
+                fillItem(shoppingCart);
+                shoppingCart.setNumber(1);
+                shoppingCart.setCreateTime(LocalDateTime.now());
+                result = addNumber(shoppingCart.getUserId(), field, 1, shoppingCart);
+            }
+            return refreshPrices(shoppingCart.getUserId(), result.items);
+        }
+
         String cartKey = cartKey();
 
         // 判断购物车中是否已存在该商品
@@ -56,31 +147,19 @@ public class ShoppingCartServiceimpl implements ShoppingCartService {
             // 同步更新Redis缓存
             String updateField = itemField(cart);
             writeToRedis(cartKey, updateField, cart);
-            return;
+            return list();
         }
 
         // 购物车中没有该商品，初始化并插入
-        String itemField;
-        if (shoppingCart.getDishId() != null) {
-            itemField = "dish_" + shoppingCart.getDishId();
-            DishVO dishvo = dishMapper.getByIdWithFlavor(shoppingCart.getDishId());
-            shoppingCart.setAmount(dishvo.getPrice());
-            shoppingCart.setImage(dishvo.getImage());
-            shoppingCart.setName(dishvo.getName());
-        } else {
-            Long setmealId = shoppingCart.getSetmealId();
-            itemField = "setmeal_" + setmealId;
-            Setmeal setmeal = setmealMapper.getById(setmealId);
-            shoppingCart.setAmount(setmeal.getPrice());
-            shoppingCart.setImage(setmeal.getImage());
-            shoppingCart.setName(setmeal.getName());
-        }
+        String itemField = itemField(shoppingCart);
+        fillItem(shoppingCart);
         shoppingCart.setNumber(1);
         shoppingCart.setCreateTime(LocalDateTime.now());
 
         shoppingCartMapper.insert(shoppingCart);
         // 保存到Redis
         writeToRedis(cartKey, itemField, shoppingCart);
+        return list();
     }
 
     /**
@@ -91,47 +170,113 @@ public class ShoppingCartServiceimpl implements ShoppingCartService {
         shoppingCart.setUserId(BaseContext.getCurrentId());
         String cartKey = cartKey();
 
+        if (shoppingCartProperties.isRedisAuthoritative()) {
+            loadCart(shoppingCart.getUserId());
+            return refreshPrices(shoppingCart.getUserId(), readCart(cartKey));
+        }
+
         HashOperations<String, String, Object> hashOps = redisTemplate.opsForHash();
         Map<String, Object> cartMap = hashOps.entries(cartKey);
         List<ShoppingCart> cartList = new ArrayList<>();
-        if (!cartMap.isEmpty()) {
+        // 缓存过期后add、sub只会写回修改的商品，只有带_loaded标记的缓存才是完整的购物车
+        if (cartMap.containsKey(LOADED_FIELD)) {
             for (Object value : cartMap.values()) {
                 if (value instanceof ShoppingCart) {
                     cartList.add((ShoppingCart) value);
                 }
             }
-            return cartList;
+            return refreshPrices(shoppingCart.getUserId(), cartList);
         }
 
         // 缓存未命中，查询数据库并回写缓存
         cartList = shoppingCartMapper.list(shoppingCart);
-        if (cartList != null && !cartList.isEmpty()) {
-            for (ShoppingCart cart : cartList) {
-                String itemField = itemField(cart);
-                hashOps.put(cartKey, itemField, cart);
-            }
-            redisTemplate.expire(cartKey, CART_EXPIRE_MINUTES, TimeUnit.MINUTES);
+        Map<String, Object> loaded = new HashMap<>();
+        for (ShoppingCart cart : cartList) {
+            loaded.put(itemField(cart), cart);
         }
-        return cartList;
+        loaded.put(LOADED_FIELD, LOADED_VALUE);
+        hashOps.putAll(cartKey, loaded);
+        redisTemplate.expire(cartKey, shoppingCartProperties.getExpireMinutes(), TimeUnit.MINUTES);
+        return refreshPrices(shoppingCart.getUserId(), cartList);
+    }
+
+    /**
+     * 下单时读取指定用户的完整购物车
+     * redis模式读取redis，默认模式直接读取mysql，不使用可能不完整或过期的缓存
+     */
+    public List<ShoppingCart> list(Long userId) {
+        if (shoppingCartProperties.isRedisAuthoritative()) {
+            loadCart(userId);
+            return readCart(cartKey(userId));
+        }
+        ShoppingCart shoppingCart = new ShoppingCart();
+        shoppingCart.setUserId(userId);
+        return shoppingCartMapper.list(shoppingCart);
     }
 
-    @Transactional(rollbackFor = Exception.class)
     public void clean() {
         Long userId = BaseContext.getCurrentId();
-        String cartKey = "user_" + userId + "_shopping_cart";
-        redisTemplate.delete(cartKey);
+        if (shoppingCartProperties.isRedisAuthoritative()) {
+            clearCart(userId);
+            return;
+        }
+        redisTemplate.delete(cartKey(userId));
         shoppingCartMapper.deleteByUserId(userId);
     }
 
+    /**
+     * 从购物车中扣减已下单的商品数量，减到0时删除；下单后新加入的商品和增加的数量保留
+     * redis模式下在订单事务提交后扣减，事务回滚时购物车保持不变
+     * @param userId
+     * @param items 下单时读取的购物车商品
+     */
     @Transactional(rollbackFor = Exception.class)
-    public void sub(ShoppingCartDTO shoppingCartDTO) {
+    public void remove(Long userId, List<ShoppingCart> items) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        if (shoppingCartProperties.isRedisAuthoritative()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        removeItems(userId, items);
+                    }
+                });
+            } else {
+                removeItems(userId, items);
+            }
+            return;
+        }
+        for (ShoppingCart item : items) {
+            shoppingCartMapper.subNumberById(item);
+        }
+        shoppingCartMapper.deleteEmptyByUserId(userId);
+        redisTemplate.delete(cartKey(userId));
+    }
+
+    /**
+     * 购物车中的商品数量减一，减到0时删除
+     * redis模式只执行redis脚本，不开启数据库事务；默认模式在事务中修改mysql
+     * @return 修改后的购物车
+     */
+    public List<ShoppingCart> sub(ShoppingCartDTO shoppingCartDTO) {
         ShoppingCart shoppingCart = new ShoppingCart();
         shoppingCart.setUserId(BaseContext.getCurrentId());
         shoppingCart.setDishId(shoppingCartDTO.getDishId());
         shoppingCart.setSetmealId(shoppingCartDTO.getSetmealId());
+        shoppingCart.setDishFlavor(shoppingCartDTO.getDishFlavor());
+
+        if (shoppingCartProperties.isRedisAuthoritative()) {
+            List<ShoppingCart> items = subNumber(shoppingCart.getUserId(), itemField(shoppingCart)).items;
+            return refreshPrices(shoppingCart.getUserId(), items);
+        }
 
-        List<ShoppingCart> cartList = shoppingCartMapper.list(shoppingCart);
-        if (cartList != null && !cartList.isEmpty()) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<ShoppingCart> cartList = shoppingCartMapper.list(shoppingCart);
+            if (cartList == null || cartList.isEmpty()) {
+                return;
+            }
             ShoppingCart cart = cartList.get(0);
             cart.setNumber(cart.getNumber() - 1);
 
@@ -144,26 +289,314 @@ public class ShoppingCartServiceimpl implements ShoppingCartService {
                 shoppingCartMapper.updateById(cart);
                 writeToRedis(cartKey, itemField, cart);
             } else if (cart.getNumber() == 0) {
-                shoppingCartMapper.deleteById(shoppingCart);
+                shoppingCartMapper.deleteById(cart);
                 hashOps.delete(cartKey, itemField);
                 // 保持和其它写入位置一致的过期策略（如果仍存在其他字段）
-                redisTemplate.expire(cartKey, CART_EXPIRE_MINUTES, TimeUnit.MINUTES);
+                redisTemplate.expire(cartKey, shoppingCartProperties.getExpireMinutes(), TimeUnit.MINUTES);
+            }
+        });
+        return list();
+    }
+
+    /**
+     * 把一组商品加入当前用户的购物车（再来一单）
+     * @param shoppingCartList
+     */
+    public void addAll(List<ShoppingCart> shoppingCartList) {
+        Long userId = BaseContext.getCurrentId();
+        if (shoppingCartProperties.isRedisAuthoritative()) {
+            for (ShoppingCart cart : shoppingCartList) {
+                addNumber(userId, itemField(cart), cart.getNumber(), cart);
+            }
+            return;
+        }
+        for (ShoppingCart shoppingCart : shoppingCartList)
+            shoppingCartMapper.insert(shoppingCart);
+        // 缓存中的购物车已经不完整，下次读取时从数据库重新加载
+        redisTemplate.delete(cartKey(userId));
+    }
+
+    /**
+     * 把redis中修改过的购物车批量同步到mysql，多个节点同时只有一个在同步
+     */
+    public void flushDirtyCarts() {
+        if (!shoppingCartProperties.isRedisAuthoritative()) {
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(FLUSH_LOCK_KEY, token, FLUSH_LOCK_SECONDS, TimeUnit.SECONDS))) {
+            return;
+        }
+        try {
+            int batchSize = shoppingCartProperties.getFlushBatchSize();
+            while (true) {
+                Set<ZSetOperations.TypedTuple<String>> dirty =
+                        stringRedisTemplate.opsForZSet().rangeWithScores(DIRTY_KEY, 0, batchSize - 1);
+                if (dirty == null || dirty.isEmpty()) {
+                    return;
+                }
+                flushBatch(dirty);
+                if (dirty.size() < batchSize) {
+                    return;
+                }
             }
+        } catch (Exception e) {
+            // 未同步的用户还在zset中，下次继续
+            log.error("购物车同步到数据库失败", e);
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(FLUSH_LOCK_KEY), token);
         }
     }
 
+    private void flushBatch(Set<ZSetOperations.TypedTuple<String>> dirty) {
+        List<Long> userIds = new ArrayList<>();
+        List<ShoppingCart> items = new ArrayList<>();
+        List<String> flushed = new ArrayList<>();
+        for (ZSetOperations.TypedTuple<String> tuple : dirty) {
+            Long userId = Long.valueOf(tuple.getValue());
+            flushed.add(tuple.getValue());
+            flushed.add(String.valueOf(tuple.getScore().longValue()));
+            Map<Object, Object> cartMap = redisTemplate.opsForHash().entries(cartKey(userId));
+            if (cartMap.isEmpty()) {
+                // redis中的购物车已过期，数据库中已经是最后一次同步的数据
+                continue;
+            }
+            userIds.add(userId);
+            for (Object value : cartMap.values()) {
+                if (value instanceof ShoppingCart) {
+                    ShoppingCart cart = (ShoppingCart) value;
+                    cart.setId(null);
+                    cart.setUserId(userId);
+                    items.add(cart);
+                }
+            }
+        }
+        if (!userIds.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                shoppingCartMapper.deleteByUserIds(userIds);
+                if (!items.isEmpty()) {
+                    shoppingCartMapper.insertBatch(items);
+                }
+            });
+        }
+        stringRedisTemplate.execute(FLUSHED_SCRIPT, Collections.singletonList(DIRTY_KEY), flushed.toArray());
+        log.info("购物车同步到数据库：{}个用户，{}条数据", userIds.size(), items.size());
+    }
+
     // --- helper methods ---
     private String cartKey() {
         return "user_" + BaseContext.getCurrentId() + "_shopping_cart";
     }
 
+    private String cartKey(Long userId) {
+        return "user_" + userId + "_shopping_cart";
+    }
+
+    /**
+     * 购物车中商品的field，同一菜品不同口味是不同的商品
+     */
     private String itemField(ShoppingCart cart) {
-        return cart.getDishId() != null ? "dish_" + cart.getDishId() : "setmeal_" + cart.getSetmealId();
+        if (cart.getDishId() == null) {
+            return "setmeal_" + cart.getSetmealId();
+        }
+        return StringUtils.hasText(cart.getDishFlavor())
+                ? "dish_" + cart.getDishId() + ":" + cart.getDishFlavor()
+                : "dish_" + cart.getDishId();
+    }
+
+    /**
+     * 根据菜品或套餐补全名称、价格、图片，读取菜品套餐信息缓存
+     */
+    private void fillItem(ShoppingCart shoppingCart) {
+        MenuItemVO item = findItem(shoppingCart);
+        if (item == null) {
+            throw new ShoppingCartBusinessException(MessageConstant.MENU_ITEM_NOT_FOUND);
+        }
+        shoppingCart.setAmount(item.getPrice());
+        shoppingCart.setImage(item.getImage());
+        shoppingCart.setName(item.getName());
+    }
+
+    private MenuItemVO findItem(ShoppingCart cart) {
+        return cart.getDishId() != null
+                ? menuItemCatalog.getDish(cart.getDishId())
+                : menuItemCatalog.getSetmeal(cart.getSetmealId());
+    }
+
+    /**
+     * 按菜品套餐的当前价格、名称、图片刷新购物车商品，有变化的商品写回购物车（redis模式写redis，默认模式写mysql和缓存）
+     * 用户看到的就是下单时校验的价格；菜品套餐已删除时保持原样，下单时提示
+     * @return 刷新后的购物车
+     */
+    private List<ShoppingCart> refreshPrices(Long userId, List<ShoppingCart> items) {
+        List<ShoppingCart> changed = new ArrayList<>();
+        for (ShoppingCart cart : items) {
+            MenuItemVO item = findItem(cart);
+            if (item == null || item.getPrice() == null
+                    || (cart.getAmount() != null && item.getPrice().compareTo(cart.getAmount()) == 0)) {
+                continue;
+            }
+            cart.setAmount(item.getPrice());
+            cart.setName(item.getName());
+            cart.setImage(item.getImage());
+            changed.add(cart);
+        }
+        if (changed.isEmpty()) {
+            return items;
+        }
+        log.info("购物车商品价格已变化，刷新{}个商品，userId={}", changed.size(), userId);
+        if (shoppingCartProperties.isRedisAuthoritative()) {
+            List<String> args = new ArrayList<>(changed.size() * 2 + 2);
+            args.add(String.valueOf(shoppingCartProperties.getExpireMinutes() * 60));
+            args.add(String.valueOf(userId));
+            for (ShoppingCart cart : changed) {
+                args.add(itemField(cart));
+                args.add(toJson(cart));
+            }
+            stringRedisTemplate.execute(REPRICE_SCRIPT, Arrays.asList(cartKey(userId), DIRTY_KEY), args.toArray());
+            return items;
+        }
+        for (ShoppingCart cart : changed) {
+            cart.setUserId(userId);
+            shoppingCartMapper.updateItem(cart);
+            writeToRedis(cartKey(userId), itemField(cart), cart);
+        }
+        return items;
     }
 
     private void writeToRedis(String cartKey, String field, ShoppingCart cart) {
         HashOperations<String, String, Object> hashOps = redisTemplate.opsForHash();
         hashOps.put(cartKey, field, cart);
-        redisTemplate.expire(cartKey, CART_EXPIRE_MINUTES, TimeUnit.MINUTES);
+        redisTemplate.expire(cartKey, shoppingCartProperties.getExpireMinutes(), TimeUnit.MINUTES);
+    }
+
+    /**
+     * redis模式下原子增加商品数量，购物车还没有加载时先从mysql加载再重试
+     * @param item 商品不存在时写入的数据，为null时不新增
+     */
+    private CartResult addNumber(Long userId, String field, int delta, ShoppingCart item) {
+        String itemJson = item == null ? "" : toJson(item);
+        String expireSeconds = String.valueOf(shoppingCartProperties.getExpireMinutes() * 60);
+        return runCartScript(ADD_SCRIPT, userId, field, String.valueOf(delta), itemJson, expireSeconds,
+                String.valueOf(userId));
+    }
+
+    /**
+     * redis模式下原子减少商品数量，减到0时删除
+     */
+    private CartResult subNumber(Long userId, String field) {
+        String expireSeconds = String.valueOf(shoppingCartProperties.getExpireMinutes() * 60);
+        return runCartScript(SUB_SCRIPT, userId, field, expireSeconds, String.valueOf(userId));
+    }
+
+    private CartResult runCartScript(RedisScript<List> script, Long userId, Object... args) {
+        List<String> keys = Arrays.asList(cartKey(userId), DIRTY_KEY);
+        CartResult result = toCartResult(stringRedisTemplate.execute(script, keys, args));
+        if (result.status == CART_NOT_LOADED) {
+            loadCart(userId);
+            result = toCartResult(stringRedisTemplate.execute(script, keys, args));
+        }
+        return result;
+    }
+
+    /**
+     * 解析脚本返回的{结果, field1, 值1, field2, 值2...}
+     */
+    private CartResult toCartResult(List<?> reply) {
+        CartResult result = new CartResult();
+        if (reply == null || reply.isEmpty()) {
+            result.status = ITEM_ABSENT;
+            return result;
+        }
+        result.status = Long.parseLong(String.valueOf(reply.get(0)));
+        RedisSerializer<?> serializer = redisTemplate.getHashValueSerializer();
+        for (int i = 1; i + 1 < reply.size(); i += 2) {
+            if (LOADED_FIELD.equals(reply.get(i))) {
+                continue;
+            }
+            Object value = serializer.deserialize(String.valueOf(reply.get(i + 1)).getBytes(StandardCharsets.UTF_8));
+            if (value instanceof ShoppingCart) {
+                result.items.add((ShoppingCart) value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * redis中没有完整的购物车时从mysql加载
+     */
+    private void loadCart(Long userId) {
+        String cartKey = cartKey(userId);
+        if (Boolean.TRUE.equals(redisTemplate.opsForHash().hasKey(cartKey, LOADED_FIELD))) {
+            return;
+        }
+        ShoppingCart query = new ShoppingCart();
+        query.setUserId(userId);
+        List<ShoppingCart> cartList = shoppingCartMapper.list(query);
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(shoppingCartProperties.getExpireMinutes() * 60));
+        args.add(LOADED_VALUE);
+        for (ShoppingCart cart : cartList) {
+            args.add(itemField(cart));
+            args.add(toJson(cart));
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, Collections.singletonList(cartKey), args.toArray());
+    }
+
+    private void removeItems(Long userId, List<ShoppingCart> items) {
+        List<String> keys = Arrays.asList(cartKey(userId), DIRTY_KEY);
+        List<String> args = new ArrayList<>(items.size() * 2 + 2);
+        args.add(String.valueOf(shoppingCartProperties.getExpireMinutes() * 60));
+        args.add(String.valueOf(userId));
+        for (ShoppingCart item : items) {
+            args.add(itemField(item));
+            args.add(String.valueOf(item.getNumber()));
+        }
+        Long result = stringRedisTemplate.execute(REMOVE_SCRIPT, keys, args.toArray());
+        if (result != null && result == CART_NOT_LOADED) {
+            loadCart(userId);
+            stringRedisTemplate.execute(REMOVE_SCRIPT, keys, args.toArray());
+        }
+    }
+
+    private void clearCart(Long userId) {
+        stringRedisTemplate.execute(CLEAR_SCRIPT, Arrays.asList(cartKey(userId), DIRTY_KEY),
+                String.valueOf(shoppingCartProperties.getExpireMinutes() * 60), LOADED_VALUE, String.valueOf(userId));
+    }
+
+    private List<ShoppingCart> readCart(String cartKey) {
+        List<ShoppingCart> cartList = new ArrayList<>();
+        for (Object value : redisTemplate.opsForHash().values(cartKey)) {
+            if (value instanceof ShoppingCart) {
+                cartList.add((ShoppingCart) value);
+            }
+        }
+        return cartList;
+    }
+
+    /**
+     * 用redisTemplate的hash序列化器生成json，保证和直接写入hash的数据格式一致
+     */
+    private String toJson(ShoppingCart cart) {
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+        return new String(serializer.serialize(cart), StandardCharsets.UTF_8);
+    }
+
+    private static <T> DefaultRedisScript<T> script(String path, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(resultType);
+        return script;
+    }
+
+    /**
+     * 购物车脚本的执行结果
+     */
+    private static class CartResult {
+        // 修改后的数量，或ITEM_ABSENT、CART_NOT_LOADED
+        private long status;
+        // 修改后的购物车
+        private final List<ShoppingCart> items = new ArrayList<>();
     }
 }
@@ -0,0 +1,182 @@
+package com.sky.service.impl;
+
+import com.sky.properties.OrderNoProperties;
+import com.sky.service.OrderNoGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地生成订单号：yyyyMMddHHmmssSSS(17位) + 节点编号(1位) + 毫秒内序号(2位) + 用户id后4位
+ * 同一节点每毫秒最多100个，序号用完或时钟回拨时沿用上一个时间戳继续递增，保证单调不重复
+ * 没有配置节点编号时从redis租用一个空闲编号（order_no:node:0-9），租约定时续期，
+ * 续期时发现编号已被其它节点占用（例如长时间停顿后租约过期）则重新租用，没有空闲编号时拒绝生成订单号
+ */
+@Service
+@Slf4j
+@ConditionalOnProperty(prefix = "sky.order-no", name = "type", havingValue = "snowflake", matchIfMissing = true)
+public class SnowflakeOrderNoGenerator implements OrderNoGenerator {
+
+    private static final DateTimeFormatter SECOND_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneId.systemDefault());
+    private static final int MAX_SEQUENCE = 99;
+    // 时钟回拨超过这个时间（毫秒）时打印警告
+    private static final long SKEW_WARN_MILLIS = 1000;
+    private static final int MAX_NODE_ID = 9;
+    private static final String NODE_KEY_PREFIX = "order_no:node:";
+    //只续期、释放自己持有的编号
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('expire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    @Autowired
+    private OrderNoProperties orderNoProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 当前使用的节点编号，-1表示没有可用的编号
+    private volatile int nodeId = -1;
+    // 是否从redis租用的编号
+    private boolean leased;
+    private final String leaseToken = UUID.randomUUID().toString();
+    private long lastMillis = -1;
+    private int sequence;
+    // 缓存当前秒格式化后的前缀，同一秒内不再重复格式化
+    private long cachedSecond = -1;
+    private String cachedSecondPrefix;
+
+    @PostConstruct
+    public void init() {
+        int configured = orderNoProperties.getNodeId();
+        if (configured >= 0 && configured <= MAX_NODE_ID) {
+            nodeId = configured;
+            return;
+        }
+        if (configured != -1) {
+            throw new IllegalStateException("sky.order-no.node-id必须在0-9之间，或为-1自动分配：" + configured);
+        }
+        leased = true;
+        nodeId = acquireNodeId();
+        if (nodeId < 0) {
+            throw new IllegalStateException("订单号节点编号0-9都已被占用，请减少节点数或改用sky.order-no.type=redis");
+        }
+        log.info("订单号节点编号：{}", nodeId);
+    }
+
+    /**
+     * 续期自动分配的节点编号，编号已被其它节点占用时重新租用
+     */
+    @Scheduled(fixedDelayString = "#{@orderNoProperties.nodeLeaseSeconds * 1000 / 3}")
+    public void renewNodeId() {
+        if (!leased) {
+            return;
+        }
+        int current = nodeId;
+        try {
+            if (current >= 0) {
+                Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(NODE_KEY_PREFIX + current),
+                        leaseToken, String.valueOf(orderNoProperties.getNodeLeaseSeconds()));
+                if (renewed != null && renewed == 1) {
+                    return;
+                }
+                log.warn("订单号节点编号{}的租约已失效，重新分配", current);
+            }
+            // 先停止使用旧编号，避免和接手该编号的节点生成相同的订单号
+            nodeId = -1;
+            nodeId = acquireNodeId();
+            if (nodeId < 0) {
+                log.error("订单号节点编号0-9都已被占用，暂停生成订单号");
+            } else if (nodeId != current) {
+                log.info("订单号节点编号：{}", nodeId);
+            }
+        } catch (Exception e) {
+            // redis暂时不可用时继续使用当前编号，租约过期前还有机会续期
+            log.error("订单号节点编号续期失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void releaseNodeId() {
+        if (!leased || nodeId < 0) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(NODE_KEY_PREFIX + nodeId), leaseToken);
+        } catch (Exception e) {
+            log.error("订单号节点编号释放失败", e);
+        }
+    }
+
+    @Override
+    public synchronized String next(Long userId) {
+        int node = nodeId;
+        if (node < 0) {
+            throw new IllegalStateException("没有可用的订单号节点编号");
+        }
+        long now = System.currentTimeMillis();
+        if (now > lastMillis) {
+            lastMillis = now;
+            sequence = 0;
+        } else {
+            if (lastMillis - now > SKEW_WARN_MILLIS) {
+                log.warn("系统时钟回拨{}ms，订单号继续使用上一个时间戳", lastMillis - now);
+            }
+            // 同一毫秒（或时钟回拨）时递增序号，序号用完时借用下一毫秒
+            if (++sequence > MAX_SEQUENCE) {
+                lastMillis++;
+                sequence = 0;
+            }
+        }
+
+        long second = lastMillis / 1000;
+        if (second != cachedSecond) {
+            cachedSecondPrefix = SECOND_FORMATTER.format(Instant.ofEpochSecond(second));
+            cachedSecond = second;
+        }
+        StringBuilder sb = new StringBuilder(24).append(cachedSecondPrefix);
+        appendPadded(sb, lastMillis % 1000, 3);
+        sb.append((char) ('0' + node));
+        appendPadded(sb, sequence, 2);
+        appendPadded(sb, userId % 10000, 4);
+        return sb.toString();
+    }
+
+    /**
+     * 依次尝试租用0-9中的空闲编号
+     * @return 租到的编号，都被占用时返回-1
+     */
+    private int acquireNodeId() {
+        for (int i = 0; i <= MAX_NODE_ID; i++) {
+            if (Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(NODE_KEY_PREFIX + i, leaseToken,
+                    orderNoProperties.getNodeLeaseSeconds(), TimeUnit.SECONDS))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static void appendPadded(StringBuilder sb, long value, int width) {
+        for (long limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        sb.append(value);
+    }
+}
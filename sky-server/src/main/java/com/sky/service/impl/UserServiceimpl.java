@@ -4,7 +4,9 @@ import com.alibaba.fastjson.JSON;
 import com.sky.dto.UserLoginDTO;
 import com.sky.entity.User;
 import com.sky.exception.LoginFailedException;
+import com.sky.mapper.DailyStatisticsMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.properties.ReportProperties;
 import com.sky.properties.WeChatProperties;
 import com.sky.service.UserService;
 import com.sky.utils.HttpClientUtil;
@@ -23,6 +25,10 @@ public class UserServiceimpl implements UserService {
     private WeChatProperties weChatProperties;
     @Autowired
     private UserMapper userMapper;
+    @Autowired
+    private DailyStatisticsMapper dailyStatisticsMapper;
+    @Autowired
+    private ReportProperties reportProperties;
     public User wxLogin(UserLoginDTO userLoginDTO) {
         //调用微信接口，获取微信用户信息
         Map<String, String> result = new HashMap<>();
@@ -46,6 +52,10 @@ public class UserServiceimpl implements UserService {
                     .createTime(LocalDateTime.now())
                     .build();
             userMapper.insert(user);
+            //没有开启预聚合时不写daily_statistics，开启后由/admin/report/rebuild回填
+            if (reportProperties.isRollupEnabled()) {
+                dailyStatisticsMapper.addNewUser(user.getCreateTime().toLocalDate());
+            }
         }
         //返回用户对象
         return user;
@@ -0,0 +1,327 @@
+package com.sky.task;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.entity.ShoppingCart;
+import com.sky.exception.BaseException;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.CheckoutProperties;
+import com.sky.vo.OrderIntakeMetricsVO;
+import com.sky.vo.OrderSubmitVO;
+import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.WebSocketTopics;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 排队下单
+ * 请求线程校验、计价后把订单放入有界队列并返回下单凭证，固定数量的线程批量写入数据库，
+ * 高峰期占用的数据库连接不超过写入线程数；处理结果保存在redis中供客户端查询，同时推送到凭证的websocket主题
+ * 队列只在本节点内存中，节点宕机时排队中的订单丢失，购物车未扣减；
+ * 用户排队中的标记只有较短的有效期，由本节点定时续期，宕机后标记很快过期，用户可以重新下单
+ */
+@Component
+@Slf4j
+public class OrderIntakeTask {
+
+    public static final String REJECT = "reject";
+    public static final String CALLER_RUNS = "caller-runs";
+
+    private static final String TICKET_PREFIX = "order:ticket:";
+    private static final String PENDING_PREFIX = "order:intake:";
+    private static final long POLL_MILLIS = 200;
+
+    @Autowired
+    private CheckoutProperties checkoutProperties;
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    private BlockingQueue<Ticket> queue;
+    private ExecutorService workers;
+    private Consumer<List<Ticket>> writer;
+    private volatile boolean running;
+
+    // 本节点排队中和处理中的凭证，凭证 -> 用户id，用于续期用户排队中的标记
+    private final ConcurrentMap<String, Long> pendingUsers = new ConcurrentHashMap<>();
+
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Long::max, 0);
+
+    /**
+     * 排队中的订单
+     */
+    @Getter
+    public static class Ticket {
+        private final String ticket;
+        private final Orders orders;
+        private final List<OrderDetail> orderDetails;
+        // 计价时读取的购物车商品，写入订单后从购物车中扣减
+        private final List<ShoppingCart> shoppingCarts;
+        private final long enqueueNanos = System.nanoTime();
+
+        public Ticket(String ticket, Orders orders, List<OrderDetail> orderDetails, List<ShoppingCart> shoppingCarts) {
+            this.ticket = ticket;
+            this.orders = orders;
+            this.orderDetails = orderDetails;
+            this.shoppingCarts = shoppingCarts;
+        }
+    }
+
+    /**
+     * 启动写入线程，未开启排队下单时不启动
+     * @param writer 在一个事务中写入一批订单，失败时抛出异常
+     */
+    public synchronized void start(Consumer<List<Ticket>> writer) {
+        if (!checkoutProperties.isIntakeEnabled() || running) {
+            return;
+        }
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(checkoutProperties.getIntakeQueueCapacity());
+        AtomicInteger index = new AtomicInteger();
+        int threads = Math.max(checkoutProperties.getIntakeWorkers(), 1);
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "order-intake-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::work);
+        }
+        log.info("排队下单已开启，队列长度：{}，写入线程数：{}", checkoutProperties.getIntakeQueueCapacity(), threads);
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * 订单放入队列
+     * @return 排队中的下单凭证；队列已满且拒绝策略为caller-runs时为处理结果
+     */
+    public OrderSubmitVO submit(Orders orders, List<OrderDetail> orderDetails, List<ShoppingCart> shoppingCarts) {
+        Long userId = orders.getUserId();
+        String ticketId = UUID.randomUUID().toString().replace("-", "");
+        long ttlMinutes = checkoutProperties.getTicketTtlMinutes();
+        // 同一用户同时只能有一笔排队中的订单，避免购物车扣减前重复下单
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(PENDING_PREFIX + userId, ticketId,
+                checkoutProperties.getIntakePendingSeconds(), TimeUnit.SECONDS))) {
+            throw new OrderBusinessException(MessageConstant.ORDER_IN_PROGRESS);
+        }
+        pendingUsers.put(ticketId, userId);
+        Ticket ticket = new Ticket(ticketId, orders, orderDetails, shoppingCarts);
+        OrderSubmitVO queued = OrderSubmitVO.builder()
+                .ticket(ticketId)
+                .status(OrderSubmitVO.QUEUED)
+                .orderNumber(orders.getNumber())
+                .orderAmount(orders.getAmount())
+                .orderTime(orders.getOrderTime())
+                .build();
+        // 先写入排队状态再入队，避免写入线程的处理结果被覆盖
+        redisTemplate.opsForValue().set(ticketKey(userId, ticketId), queued, ttlMinutes, TimeUnit.MINUTES);
+        if (queue.offer(ticket)) {
+            enqueuedCount.increment();
+            return queued;
+        }
+        rejectedCount.increment();
+        if (CALLER_RUNS.equals(checkoutProperties.getIntakeRejectPolicy())) {
+            return process(Collections.singletonList(ticket)).get(0);
+        }
+        pendingUsers.remove(ticketId);
+        redisTemplate.delete(ticketKey(userId, ticketId));
+        redisTemplate.delete(PENDING_PREFIX + userId);
+        throw new OrderBusinessException(MessageConstant.ORDER_BUSY);
+    }
+
+    /**
+     * 定时续期本节点排队中订单的用户标记，间隔为标记有效期的三分之一
+     */
+    @Scheduled(fixedDelayString = "#{@checkoutProperties.intakePendingSeconds * 1000 / 3}")
+    @SuppressWarnings("unchecked")
+    public void renewPending() {
+        if (!running || pendingUsers.isEmpty()) {
+            return;
+        }
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        long seconds = checkoutProperties.getIntakePendingSeconds();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long userId : pendingUsers.values()) {
+                    connection.keyCommands().expire(keySerializer.serialize(PENDING_PREFIX + userId), seconds);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("排队中订单标记续期失败", e);
+        }
+    }
+
+    /**
+     * 查询下单凭证的处理结果
+     * @return 凭证不存在或已过期时返回null
+     */
+    public OrderSubmitVO getTicket(Long userId, String ticketId) {
+        Object value = redisTemplate.opsForValue().get(ticketKey(userId, ticketId));
+        return value instanceof OrderSubmitVO ? (OrderSubmitVO) value : null;
+    }
+
+    public OrderIntakeMetricsVO metrics() {
+        long processed = completedCount.sum() + failedCount.sum();
+        return OrderIntakeMetricsVO.builder()
+                .enabled(running)
+                .queueDepth(queue == null ? 0 : queue.size())
+                .queueCapacity(checkoutProperties.getIntakeQueueCapacity())
+                .enqueuedCount(enqueuedCount.sum())
+                .rejectedCount(rejectedCount.sum())
+                .completedCount(completedCount.sum())
+                .failedCount(failedCount.sum())
+                .batchCount(batchCount.sum())
+                .avgWaitMillis(processed == 0 ? 0.0 : waitNanos.sum() / 1e6 / processed)
+                .maxWaitMillis(maxWaitNanos.get() / 1e6)
+                .build();
+    }
+
+    private void work() {
+        int batchSize = Math.max(checkoutProperties.getIntakeBatchSize(), 1);
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        // 停止后继续处理完队列中剩余的订单
+        while (running || !queue.isEmpty()) {
+            try {
+                Ticket first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("排队订单处理失败", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 写入一批订单，整批失败时逐条重试，只让出错的订单失败
+     */
+    private List<OrderSubmitVO> process(List<Ticket> batch) {
+        long now = System.nanoTime();
+        for (Ticket ticket : batch) {
+            long wait = now - ticket.getEnqueueNanos();
+            waitNanos.add(wait);
+            maxWaitNanos.accumulate(wait);
+        }
+        List<OrderSubmitVO> results = new ArrayList<>(batch.size());
+        try {
+            batchCount.increment();
+            writer.accept(batch);
+            for (Ticket ticket : batch) {
+                results.add(complete(ticket, null));
+            }
+            return results;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                results.add(complete(batch.get(0), e));
+                return results;
+            }
+            log.warn("批量写入订单失败，逐条重试：{}条", batch.size(), e);
+        }
+        for (Ticket ticket : batch) {
+            try {
+                batchCount.increment();
+                writer.accept(Collections.singletonList(ticket));
+                results.add(complete(ticket, null));
+            } catch (Exception e) {
+                results.add(complete(ticket, e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 保存处理结果并推送给客户端
+     */
+    private OrderSubmitVO complete(Ticket ticket, Exception error) {
+        Orders orders = ticket.getOrders();
+        OrderSubmitVO.OrderSubmitVOBuilder builder = OrderSubmitVO.builder()
+                .ticket(ticket.getTicket())
+                .orderNumber(orders.getNumber())
+                .orderAmount(orders.getAmount())
+                .orderTime(orders.getOrderTime());
+        if (error == null) {
+            completedCount.increment();
+            builder.id(orders.getId()).status(OrderSubmitVO.SUCCESS);
+        } else {
+            failedCount.increment();
+            log.error("排队订单写入失败：{}", orders.getNumber(), error);
+            builder.status(OrderSubmitVO.FAILED)
+                    .message(error instanceof BaseException ? error.getMessage() : MessageConstant.ORDER_SUBMIT_FAILED);
+        }
+        OrderSubmitVO result = builder.build();
+        Long userId = orders.getUserId();
+        try {
+            redisTemplate.opsForValue().set(ticketKey(userId, ticket.getTicket()), result,
+                    checkoutProperties.getTicketTtlMinutes(), TimeUnit.MINUTES);
+            redisTemplate.delete(PENDING_PREFIX + userId);
+        } catch (Exception e) {
+            log.error("下单凭证状态保存失败：{}", ticket.getTicket(), e);
+        } finally {
+            pendingUsers.remove(ticket.getTicket());
+        }
+        webSocketServer.sendToTopic(WebSocketTopics.ticket(ticket.getTicket()), null, JSON.toJSONString(result));
+        return result;
+    }
+
+    //凭证key带上用户id，只能查询自己的凭证
+    private String ticketKey(Long userId, String ticketId) {
+        return TICKET_PREFIX + userId + ":" + ticketId;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("排队订单未处理完：{}条", queue.size());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.sky.task;
+
+import com.sky.entity.OrderOutbox;
+import com.sky.mapper.OrderOutboxMapper;
+import com.sky.properties.OrderOutboxProperties;
+import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.WebSocketTopics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 发送订单通知发件箱中的消息
+ * 下单、支付的事务提交后立即触发一次，另外定时轮询兜底（重试、节点宕机未发送的消息）
+ * 多个节点通过认领（owner + lease_until）分批发送，同一条消息同一时间只会被一个节点发送
+ * 已发送的消息保留sky.outbox.retention-days天后删除，发送失败的消息保留用于排查
+ */
+@Component
+@Slf4j
+public class OrderOutboxTask {
+    @Autowired
+    private OrderOutboxMapper orderOutboxMapper;
+    @Autowired
+    private OrderOutboxProperties orderOutboxProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    private static final String ORDER_ARRIVED_CHANNEL = "order:arrived";
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "order-outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 已经提交了一次发送还没开始执行时，新的触发直接合并
+    private final AtomicBoolean triggered = new AtomicBoolean();
+
+    /**
+     * 事务提交后触发发送，不阻塞调用线程
+     */
+    public void trigger() {
+        if (triggered.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                triggered.set(false);
+                dispatch();
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "#{@orderOutboxProperties.pollIntervalMillis}")
+    public void poll() {
+        dispatch();
+    }
+
+    /**
+     * 每天凌晨分批删除过期的已发送消息，多个节点同时执行也只是删除同一批数据
+     */
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void cleanup() {
+        LocalDateTime before = LocalDateTime.now().minusDays(orderOutboxProperties.getRetentionDays());
+        int batchSize = orderOutboxProperties.getCleanupBatchSize();
+        long total = 0;
+        try {
+            int deleted;
+            do {
+                deleted = orderOutboxMapper.deleteSentBefore(before, batchSize);
+                total += deleted;
+            } while (deleted == batchSize);
+        } catch (Exception e) {
+            log.error("订单通知发件箱清理失败", e);
+        }
+        log.info("订单通知发件箱清理完成，删除{}条{}之前的已发送消息", total, before);
+    }
+
+    /**
+     * 分批认领并发送，直到没有到期的消息
+     */
+    public synchronized void dispatch() {
+        try {
+            int batchSize = orderOutboxProperties.getBatchSize();
+            while (true) {
+                String owner = UUID.randomUUID().toString();
+                LocalDateTime now = LocalDateTime.now().withNano(0);
+                int claimed = orderOutboxMapper.claim(owner, now,
+                        now.plusSeconds(orderOutboxProperties.getLeaseSeconds()), batchSize);
+                if (claimed == 0) {
+                    return;
+                }
+                List<Long> sentIds = new ArrayList<>();
+                for (OrderOutbox outbox : orderOutboxMapper.getClaimed(owner)) {
+                    try {
+                        send(outbox);
+                        sentIds.add(outbox.getId());
+                    } catch (Exception e) {
+                        retryLater(outbox, e);
+                    }
+                }
+                if (!sentIds.isEmpty()) {
+                    orderOutboxMapper.markSent(sentIds);
+                }
+                if (claimed < batchSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            // 已认领未完成的消息在认领到期后重新发送
+            log.error("订单通知发送失败", e);
+        }
+    }
+
+    private void send(OrderOutbox outbox) {
+        if (OrderOutbox.REDIS.equals(outbox.getDestination())) {
+            stringRedisTemplate.convertAndSend(ORDER_ARRIVED_CHANNEL, outbox.getPayload());
+        } else if (OrderOutbox.WEBSOCKET.equals(outbox.getDestination())) {
+            // 来单提醒只推送给门店的商家端；认领过期后重发的消息id不变，各节点按id去重
+            webSocketServer.sendToTopic(WebSocketTopics.shop(WebSocketTopics.DEFAULT_SHOP),
+                    "outbox:" + outbox.getId(), outbox.getPayload());
+        } else {
+            throw new IllegalArgumentException("未知的发送目标：" + outbox.getDestination());
+        }
+    }
+
+    /**
+     * 按指数退避安排下次发送，超过最大次数后标记为失败
+     */
+    private void retryLater(OrderOutbox outbox, Exception e) {
+        int attempts = (outbox.getAttempts() == null ? 0 : outbox.getAttempts()) + 1;
+        outbox.setAttempts(attempts);
+        if (attempts >= orderOutboxProperties.getMaxAttempts()) {
+            outbox.setStatus(OrderOutbox.FAILED);
+            log.error("订单通知发送失败，已达到最大次数：id={}, orderId={}", outbox.getId(), outbox.getOrderId(), e);
+        } else {
+            long backoff = Math.min(1L << Math.min(attempts - 1, 20), orderOutboxProperties.getMaxBackoffSeconds());
+            outbox.setStatus(OrderOutbox.PENDING);
+            outbox.setNextRetryTime(LocalDateTime.now().withNano(0).plusSeconds(backoff));
+            log.warn("订单通知发送失败，{}秒后重试：id={}, orderId={}", backoff, outbox.getId(), outbox.getOrderId(), e);
+        }
+        orderOutboxMapper.markRetry(outbox);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
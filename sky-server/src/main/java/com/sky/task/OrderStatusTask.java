@@ -0,0 +1,20 @@
+package com.sky.task;
+
+import com.sky.cache.OrderStatusCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+public class OrderStatusTask {
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+
+    // 定时和数据库对账，校正订单状态计数
+    @Scheduled(fixedDelayString = "#{@orderStatusProperties.reconcileIntervalMillis}")
+    public void reconcile() {
+        orderStatusCounter.reconcile();
+    }
+}
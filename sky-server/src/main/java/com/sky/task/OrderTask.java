@@ -2,28 +2,199 @@ package com.sky.task;
 
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTimeoutProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
-import static com.sky.entity.Orders.DELIVERY_IN_PROGRESS;
-
+/**
+ * 订单超时处理：待付款订单超时自动取消，派送中订单超时自动完成
+ * 每个订单的到期时间保存在redis有序集合中（score为到期时间），下单和开始派送时登记，
+ * 定时取出到期的订单分批处理，订单仍处于原状态时才修改，已付款、已完成的订单直接跳过
+ * 取出时只把到期时间推后一个认领有效期，处理成功后才删除，节点宕机或处理失败时到期后重新处理
+ * 节点启动完成后按数据库中待付款、派送中的订单补登记一次，防止redis数据丢失或登记前宕机漏掉订单
+ */
 @Component
 @Slf4j
 public class OrderTask {
+
+    public static final String PAYMENT = "payment";
+    public static final String DELIVERY = "delivery";
+
+    private static final String KEY_PREFIX = "order:timeout:";
+    //取出到期的订单，并把到期时间推后到认领有效期结束
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+                    "for i, id in ipairs(ids) do redis.call('zadd', KEYS[1], ARGV[3], id) end " +
+                    "return ids",
+            List.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
     @Autowired
     private OrderMapper orderMapper;
-    // 每天一点定时完成订单
-    @Scheduled(cron = "0 0 1 * * ? ")
-    public void completedTimeoutOrders(){
-        log.info("定时完成订单开始");
-        //更新订单状态
-        LocalDateTime time = LocalDateTime.now().minusDays(1);
-        orderMapper.updateStatus4Completion(Orders.DELIVERY_IN_PROGRESS, time);
-        int count = orderMapper.completedTimeoutOrders();
-        log.info("完成{}个订单", count);
+    @Autowired
+    private OrderTimeoutProperties orderTimeoutProperties;
+
+    private volatile Function<List<Long>, Integer> paymentHandler;
+    private volatile Function<List<Long>, Integer> deliveryHandler;
+
+    /**
+     * 设置超时订单的处理方法，返回实际修改的订单数
+     * @param paymentHandler 取消超时未付款的订单
+     * @param deliveryHandler 完成超时的派送中订单
+     */
+    public void start(Function<List<Long>, Integer> paymentHandler, Function<List<Long>, Integer> deliveryHandler) {
+        this.paymentHandler = paymentHandler;
+        this.deliveryHandler = deliveryHandler;
+    }
+
+    /**
+     * 登记订单的到期时间，有事务时在事务提交后登记
+     * @param type PAYMENT或DELIVERY
+     * @param orderId 订单id
+     * @param from 计时起点（下单时间、开始派送时间）
+     */
+    public void schedule(String type, Long orderId, LocalDateTime from) {
+        long deadline = toMillis(from.plusMinutes(timeoutMinutes(type)));
+        afterCommit(() -> stringRedisTemplate.opsForZSet().add(KEY_PREFIX + type, orderId.toString(), deadline));
+    }
+
+    /**
+     * 订单已付款、已完成等不再需要超时处理时删除登记，有事务时在事务提交后删除
+     * 删除失败也没有影响，到期时订单状态已经变化会直接跳过
+     * @param type PAYMENT或DELIVERY
+     * @param orderId 订单id
+     */
+    public void cancel(String type, Long orderId) {
+        afterCommit(() -> stringRedisTemplate.opsForZSet().remove(KEY_PREFIX + type, orderId.toString()));
+    }
+
+    // 启动完成后补登记一次，不占用定时任务线程
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        try {
+            recover(PAYMENT, Orders.PENDING_PAYMENT);
+            recover(DELIVERY, Orders.DELIVERY_IN_PROGRESS);
+        } catch (Exception e) {
+            log.error("订单超时登记恢复失败", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "#{@orderTimeoutProperties.pollIntervalMillis}")
+    public void processTimeoutOrders() {
+        if (paymentHandler == null || deliveryHandler == null) {
+            return;
+        }
+        try {
+            process(PAYMENT, paymentHandler);
+            process(DELIVERY, deliveryHandler);
+        } catch (Exception e) {
+            log.error("订单超时处理失败", e);
+        }
+    }
+
+    /**
+     * 分批取出到期的订单并处理，直到没有到期订单
+     */
+    private void process(String type, Function<List<Long>, Integer> handler) {
+        String key = KEY_PREFIX + type;
+        int batchSize = orderTimeoutProperties.getBatchSize();
+        while (true) {
+            long now = System.currentTimeMillis();
+            List<?> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(key),
+                    Long.toString(now), Integer.toString(batchSize),
+                    Long.toString(now + orderTimeoutProperties.getLeaseSeconds() * 1000));
+            if (claimed == null || claimed.isEmpty()) {
+                return;
+            }
+            List<Long> ids = new ArrayList<>(claimed.size());
+            for (Object id : claimed) {
+                ids.add(Long.valueOf(id.toString()));
+            }
+            int count = handler.apply(ids);
+            stringRedisTemplate.opsForZSet().remove(key, claimed.toArray());
+            log.info("订单超时处理：{}，到期{}个，修改{}个", type, ids.size(), count);
+            if (claimed.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 按数据库补登记指定状态订单的到期时间，已登记的订单保持不变
+     * 库中没有开始派送的时间，派送中的订单按下单时间计时
+     */
+    private void recover(String type, Integer status) {
+        String key = KEY_PREFIX + type;
+        long timeoutMinutes = timeoutMinutes(type);
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            List<Orders> ordersList = orderMapper.listByStatusAfter(status, lastId,
+                    orderTimeoutProperties.getRecoveryBatchSize());
+            if (ordersList.isEmpty()) {
+                break;
+            }
+            Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(ordersList.size() * 2);
+            for (Orders orders : ordersList) {
+                tuples.add(new DefaultTypedTuple<>(orders.getId().toString(),
+                        (double) toMillis(orders.getOrderTime().plusMinutes(timeoutMinutes))));
+                lastId = orders.getId();
+            }
+            Long added = stringRedisTemplate.opsForZSet().addIfAbsent(key, tuples);
+            total += added == null ? 0 : added.intValue();
+        }
+        log.info("订单超时登记恢复：{}，补登记{}个", type, total);
+    }
+
+    private long timeoutMinutes(String type) {
+        return PAYMENT.equals(type) ? orderTimeoutProperties.getPaymentTimeoutMinutes()
+                : orderTimeoutProperties.getDeliveryTimeoutMinutes();
+    }
+
+    private long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    run(action);
+                }
+            });
+        } else {
+            run(action);
+        }
+    }
+
+    private void run(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            // 登记失败的订单在节点下次启动时按数据库补登记
+            log.error("订单超时登记失败", e);
+        }
     }
 }
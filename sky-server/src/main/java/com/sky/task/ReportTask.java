@@ -0,0 +1,32 @@
+package com.sky.task;
+
+import com.sky.properties.ReportProperties;
+import com.sky.service.ReportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+@Slf4j
+public class ReportTask {
+    @Autowired
+    private ReportService reportService;
+    @Autowired
+    private ReportProperties reportProperties;
+
+    // 每天两点重建最近几天的预聚合统计数据
+    @Scheduled(cron = "0 0 2 * * ?")
+    public void rebuildDailyStatistics() {
+        if (!reportProperties.isRollupEnabled()) {
+            return;
+        }
+        LocalDate end = LocalDate.now().minusDays(1);
+        LocalDate begin = end.minusDays(reportProperties.getRebuildDays() - 1);
+        log.info("重建统计数据开始：{} ~ {}", begin, end);
+        reportService.rebuildDailyStatistics(begin, end);
+        log.info("重建统计数据完成");
+    }
+}
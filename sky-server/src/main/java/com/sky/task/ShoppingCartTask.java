@@ -0,0 +1,29 @@
+package com.sky.task;
+
+import com.sky.service.ShoppingCartService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+public class ShoppingCartTask {
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    // 启动时先把上次停机前（或其它节点宕机前）没有同步的购物车写入数据库
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        log.info("同步未写入数据库的购物车");
+        shoppingCartService.flushDirtyCarts();
+    }
+
+    // 定时把redis中修改过的购物车批量写入数据库
+    @Scheduled(fixedDelayString = "#{@shoppingCartProperties.flushIntervalMillis}")
+    public void flushDirtyCarts() {
+        shoppingCartService.flushDirtyCarts();
+    }
+}
@@ -0,0 +1,144 @@
+package com.sky.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个websocket连接和它的待发送消息队列
+ * 同一连接同一时间只有一个异步发送在进行，发送完成后再发送队列中的下一条
+ */
+@Slf4j
+class ClientSession {
+
+    private final String sid;
+    private final Session session;
+    private final BlockingQueue<String> queue;
+    private final WebSocketSessionRegistry registry;
+    private final AtomicBoolean sending = new AtomicBoolean();
+    //已订阅的主题，断开时从注册表的主题索引中移除
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+    //最近一次收发消息或收到pong的时间
+    private volatile long lastActiveMillis = System.currentTimeMillis();
+    //已发送ping还没收到pong时为发送时间，否则为0
+    private volatile long pingSentMillis;
+
+    ClientSession(String sid, Session session, int maxQueueSize, long sendTimeoutMillis,
+                  WebSocketSessionRegistry registry) {
+        this.sid = sid;
+        this.session = session;
+        this.queue = new ArrayBlockingQueue<>(maxQueueSize);
+        this.registry = registry;
+        session.getAsyncRemote().setSendTimeout(sendTimeoutMillis);
+    }
+
+    String getSid() {
+        return sid;
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    Set<String> getTopics() {
+        return topics;
+    }
+
+    int queueDepth() {
+        return queue.size();
+    }
+
+    long getLastActiveMillis() {
+        return lastActiveMillis;
+    }
+
+    long getPingSentMillis() {
+        return pingSentMillis;
+    }
+
+    boolean isOpen() {
+        return !closed && session.isOpen();
+    }
+
+    /**
+     * 收到客户端的消息或pong
+     */
+    void touch() {
+        lastActiveMillis = System.currentTimeMillis();
+        pingSentMillis = 0;
+    }
+
+    /**
+     * 发送协议层的ping，客户端（浏览器）自动回复pong
+     */
+    void ping() throws IOException {
+        pingSentMillis = System.currentTimeMillis();
+        session.getAsyncRemote().sendPing(ByteBuffer.allocate(0));
+    }
+
+    /**
+     * 消息放入队列，不阻塞调用线程
+     * @return 队列已满时返回false
+     */
+    boolean enqueue(String message) {
+        if (closed || !queue.offer(message)) {
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    private void drain() {
+        while (!closed && sending.compareAndSet(false, true)) {
+            String message = queue.poll();
+            if (message == null) {
+                sending.set(false);
+                // 释放发送权之后可能又有消息入队
+                if (queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                session.getAsyncRemote().sendText(message, result -> {
+                    registry.recordSend(System.nanoTime() - start, result.isOK());
+                    if (!result.isOK()) {
+                        log.warn("websocket消息发送失败，断开连接：{}", sid, result.getException());
+                        registry.evict(this, "send failed");
+                        return;
+                    }
+                    lastActiveMillis = System.currentTimeMillis();
+                    sending.set(false);
+                    drain();
+                });
+            } catch (Exception e) {
+                registry.recordSend(System.nanoTime() - start, false);
+                log.warn("websocket消息发送失败，断开连接：{}", sid, e);
+                registry.evict(this, "send failed");
+            }
+            return;
+        }
+    }
+
+    void close(String reason) {
+        closed = true;
+        queue.clear();
+        try {
+            if (session.isOpen()) {
+                session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, reason));
+            }
+        } catch (IOException e) {
+            log.warn("websocket连接关闭失败：{}", sid, e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * websocket集群群发
+ * 消息只发布一次到redis频道，每个节点（包括发布者自己）收到后推送给本节点的连接
+ * 按消息id去重（发件箱重发等情况），同一门店的消息在本节点按收到的顺序分发
+ */
+@Component
+@Slf4j
+public class ClusterBroadcaster implements MessageListener {
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private WebSocketSessionRegistry webSocketSessionRegistry;
+
+    private Cache<String, Boolean> deliveredIds;
+    private ExecutorService[] dispatchers;
+
+    @PostConstruct
+    public void init() {
+        deliveredIds = Caffeine.newBuilder()
+                .maximumSize(webSocketProperties.getDedupCapacity())
+                .build();
+        dispatchers = new ExecutorService[Math.max(webSocketProperties.getDispatchThreads(), 1)];
+        for (int i = 0; i < dispatchers.length; i++) {
+            String name = "websocket-dispatch-" + i;
+            dispatchers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * 向所有节点群发
+     * @param shop 门店，同一门店的消息保持顺序
+     * @param topic 主题，只推送给订阅了该主题的连接，为null时推送给所有连接
+     * @param messageId 消息id，相同id的消息只推送一次，为null时自动生成
+     * @param message 消息内容
+     */
+    public void publish(String shop, String topic, String messageId, String message) {
+        JSONObject envelope = new JSONObject();
+        envelope.put("id", messageId != null ? messageId : UUID.randomUUID().toString());
+        envelope.put("shop", shop);
+        envelope.put("topic", topic);
+        envelope.put("body", message);
+        if (!webSocketProperties.isClusterEnabled()) {
+            dispatch(envelope);
+            return;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(webSocketProperties.getClusterChannel(), envelope.toJSONString());
+        } catch (Exception e) {
+            // redis不可用时至少推送给本节点的连接
+            log.error("websocket集群消息发布失败，只推送本节点：{}", envelope.getString("id"), e);
+            dispatch(envelope);
+        }
+    }
+
+    /**
+     * 收到集群消息（包括本节点发布的）
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            dispatch(JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            log.error("websocket集群消息处理失败", e);
+        }
+    }
+
+    private void dispatch(JSONObject envelope) {
+        String id = envelope.getString("id");
+        if (deliveredIds.asMap().putIfAbsent(id, Boolean.TRUE) != null) {
+            log.debug("websocket集群消息重复，忽略：{}", id);
+            return;
+        }
+        String shop = envelope.getString("shop");
+        int index = Math.floorMod(shop == null ? 0 : shop.hashCode(), dispatchers.length);
+        String topic = envelope.getString("topic");
+        String body = envelope.getString("body");
+        dispatchers[index].execute(() -> webSocketSessionRegistry.deliver(topic, body));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService dispatcher : dispatchers) {
+            dispatcher.shutdown();
+        }
+    }
+}
@@ -1,42 +1,54 @@
 package com.sky.websocket;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.context.ContextLoader;
-import org.springframework.web.context.WebApplicationContext;
 
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.PongMessage;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import javax.websocket.server.ServerEndpointConfig;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * WebSocket服务
+ * 每个连接由容器创建一个实例，连接统一保存在WebSocketSessionRegistry中
+ * 连接时通过topics参数（逗号分隔）订阅主题，不传时作为商家端订阅门店主题；
+ * 连接后可以发送 {"type":"subscribe","topic":"order:1"} 或 unsubscribe 调整订阅
  */
 @Component
+@Slf4j
 @ServerEndpoint(value = "/ws/{sid}")
 public class WebSocketServer {
 
+    //容器创建的连接实例不经过spring注入，通过静态字段共享注册表
+    private static WebSocketSessionRegistry registry;
+    private static ClusterBroadcaster clusterBroadcaster;
 
-    /**
-     * Spring配置器，用于让WebSocket Endpoint能够访问Spring Bean
-     */
+    @Autowired
+    public void setRegistry(WebSocketSessionRegistry registry) {
+        WebSocketServer.registry = registry;
+    }
 
-    //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    @Autowired
+    public void setClusterBroadcaster(ClusterBroadcaster clusterBroadcaster) {
+        WebSocketServer.clusterBroadcaster = clusterBroadcaster;
+    }
 
     /**
      * 连接建立成功调用的方法
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        log.info("客户端：{}建立连接", sid);
+        registry.register(sid, session, getTopics(session));
     }
 
     /**
@@ -45,8 +57,31 @@ public class WebSocketServer {
      * @param message 客户端发送过来的消息
      */
     @OnMessage
-    public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+    public void onMessage(Session session, String message, @PathParam("sid") String sid) {
+        log.info("收到来自客户端：{}的信息:{}", sid, message);
+        registry.touch(sid, session);
+        JSONObject msg;
+        try {
+            msg = JSON.parseObject(message);
+        } catch (Exception e) {
+            return;
+        }
+        if (msg == null || !WebSocketTopics.isValid(msg.getString("topic"))) {
+            return;
+        }
+        if ("subscribe".equals(msg.getString("type"))) {
+            registry.subscribe(sid, session, msg.getString("topic"));
+        } else if ("unsubscribe".equals(msg.getString("type"))) {
+            registry.unsubscribe(sid, session, msg.getString("topic"));
+        }
+    }
+
+    /**
+     * 收到客户端对心跳ping的回复
+     */
+    @OnMessage
+    public void onPong(Session session, PongMessage message, @PathParam("sid") String sid) {
+        registry.touch(sid, session);
     }
 
     /**
@@ -55,26 +90,57 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开:{}", sid);
+        registry.unregister(sid, session);
+    }
+
+    @OnError
+    public void onError(Session session, Throwable error, @PathParam("sid") String sid) {
+        log.warn("连接异常:{}", sid, error);
+        registry.unregister(sid, session);
     }
 
     /**
-     * 群发
+     * 群发到所有节点的连接，发布到redis后立即返回
      *
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
-            try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
+        clusterBroadcaster.publish(WebSocketTopics.DEFAULT_SHOP, null, null, message);
+    }
+
+    /**
+     * 推送给所有节点上订阅了该主题的连接，相同messageId的消息只推送一次
+     *
+     * @param topic
+     * @param messageId 为null时不去重
+     * @param message
+     */
+    public void sendToTopic(String topic, String messageId, String message) {
+        clusterBroadcaster.publish(WebSocketTopics.DEFAULT_SHOP, topic, messageId, message);
+    }
+
+    /**
+     * 连接参数中的订阅主题，没有时默认订阅门店和商家端主题
+     */
+    private List<String> getTopics(Session session) {
+        List<String> topics = new ArrayList<>();
+        List<String> params = session.getRequestParameterMap().get("topics");
+        if (params != null) {
+            for (String param : params) {
+                for (String topic : param.split(",")) {
+                    if (WebSocketTopics.isValid(topic.trim())) {
+                        topics.add(topic.trim());
+                    }
+                }
             }
         }
+        if (topics.isEmpty()) {
+            topics.add(WebSocketTopics.shop(WebSocketTopics.DEFAULT_SHOP));
+            topics.add(WebSocketTopics.role(WebSocketTopics.ROLE_MERCHANT));
+        }
+        return topics;
     }
 
 }
@@ -0,0 +1,264 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import com.sky.vo.WebSocketMetricsVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.Session;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * websocket连接注册表
+ * 群发在专用线程池中把消息放入每个连接的队列，由各连接异步发送，慢客户端不会拖慢其它连接和业务线程
+ * 连接按订阅的主题建立索引，按主题推送时只遍历该主题的订阅者
+ */
+@Component
+@Slf4j
+public class WebSocketSessionRegistry {
+
+    private static final int BROADCAST_QUEUE_SIZE = 10000;
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    private final ConcurrentMap<String, ClientSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<ClientSession>> topics = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor broadcastExecutor;
+
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final LongAccumulator maxSendNanos = new LongAccumulator(Long::max, 0);
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        broadcastExecutor = new ThreadPoolExecutor(webSocketProperties.getBroadcastThreads(),
+                webSocketProperties.getBroadcastThreads(), 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(BROADCAST_QUEUE_SIZE), r -> {
+            Thread thread = new Thread(r, "websocket-broadcast-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 注册连接并订阅主题，同一sid重复连接时关闭旧连接
+     */
+    public void register(String sid, Session session, Collection<String> topicList) {
+        ClientSession client = new ClientSession(sid, session, webSocketProperties.getMaxQueueSize(),
+                webSocketProperties.getSendTimeoutMillis(), this);
+        ClientSession old = sessions.put(sid, client);
+        if (old != null && old.getSession() != session) {
+            removeTopics(old);
+            old.close("replaced");
+        }
+        topicList.forEach(topic -> subscribe(client, topic));
+    }
+
+    public void unregister(String sid, Session session) {
+        ClientSession client = sessions.get(sid);
+        if (client != null && client.getSession() == session) {
+            sessions.remove(sid, client);
+            removeTopics(client);
+        }
+    }
+
+    /**
+     * 连接订阅主题
+     */
+    public void subscribe(String sid, Session session, String topic) {
+        ClientSession client = sessions.get(sid);
+        if (client != null && client.getSession() == session) {
+            subscribe(client, topic);
+        }
+    }
+
+    /**
+     * 连接取消订阅主题
+     */
+    public void unsubscribe(String sid, Session session, String topic) {
+        ClientSession client = sessions.get(sid);
+        if (client != null && client.getSession() == session) {
+            client.getTopics().remove(topic);
+            removeFromTopic(client, topic);
+        }
+    }
+
+    private void subscribe(ClientSession client, String topic) {
+        client.getTopics().add(topic);
+        topics.compute(topic, (key, subscribers) -> {
+            if (subscribers == null) {
+                subscribers = ConcurrentHashMap.newKeySet();
+            }
+            subscribers.add(client);
+            return subscribers;
+        });
+    }
+
+    private void removeTopics(ClientSession client) {
+        client.getTopics().forEach(topic -> removeFromTopic(client, topic));
+    }
+
+    private void removeFromTopic(ClientSession client, String topic) {
+        // 没有订阅者的主题直接删除，避免订单主题越积越多
+        topics.computeIfPresent(topic, (key, subscribers) -> {
+            subscribers.remove(client);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    /**
+     * 收到客户端的消息或pong，刷新空闲时间
+     */
+    public void touch(String sid, Session session) {
+        ClientSession client = sessions.get(sid);
+        if (client != null && client.getSession() == session) {
+            client.touch();
+        }
+    }
+
+    /**
+     * 心跳检查：清理已关闭的连接，断开ping超时的连接，只给空闲超过心跳间隔的连接发送ping
+     * ping在群发线程池中发送，单个连接阻塞不影响其它连接的检查
+     */
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (ClientSession client : sessions.values()) {
+            if (!client.isOpen()) {
+                evict(client, "closed");
+                continue;
+            }
+            long pingSent = client.getPingSentMillis();
+            if (pingSent > 0) {
+                if (now - pingSent >= webSocketProperties.getHeartbeatTimeoutMillis()) {
+                    log.warn("websocket客户端心跳超时，断开连接：{}", client.getSid());
+                    evict(client, "heartbeat timeout");
+                }
+                continue;
+            }
+            if (now - client.getLastActiveMillis() < webSocketProperties.getHeartbeatIntervalMillis()) {
+                continue;
+            }
+            try {
+                broadcastExecutor.execute(() -> ping(client));
+            } catch (RejectedExecutionException e) {
+                log.warn("websocket群发线程池繁忙，跳过本次心跳：{}", client.getSid());
+            }
+        }
+    }
+
+    private void ping(ClientSession client) {
+        try {
+            client.ping();
+        } catch (Exception e) {
+            log.warn("websocket心跳发送失败，断开连接：{}", client.getSid(), e);
+            evict(client, "heartbeat failed");
+        }
+    }
+
+    /**
+     * 群发，在群发线程池中放入各连接的队列，立即返回
+     */
+    public void broadcast(String message) {
+        try {
+            broadcastExecutor.execute(() -> deliver(message));
+        } catch (RejectedExecutionException e) {
+            log.error("websocket群发任务积压，消息丢弃：{}", message);
+        }
+    }
+
+    /**
+     * 在调用线程中把消息放入本节点每个连接的队列，不等待发送完成
+     * 同一线程先后投递的消息在每个连接上保持顺序
+     */
+    public void deliver(String message) {
+        sessions.values().forEach(client -> offer(client, message));
+    }
+
+    /**
+     * 在调用线程中把消息放入本节点订阅了该主题的连接的队列
+     * @param topic 主题，为null时推送给所有连接
+     * @param message 消息内容
+     */
+    public void deliver(String topic, String message) {
+        if (topic == null) {
+            deliver(message);
+            return;
+        }
+        Set<ClientSession> subscribers = topics.get(topic);
+        if (subscribers != null) {
+            subscribers.forEach(client -> offer(client, message));
+        }
+    }
+
+    private void offer(ClientSession client, String message) {
+        if (!client.enqueue(message)) {
+            log.warn("websocket客户端消费太慢，断开连接：{}", client.getSid());
+            evict(client, "slow consumer");
+        }
+    }
+
+    /**
+     * 断开慢客户端或发送失败的连接
+     */
+    void evict(ClientSession client, String reason) {
+        if (sessions.remove(client.getSid(), client)) {
+            evictedCount.increment();
+        }
+        removeTopics(client);
+        client.close(reason);
+    }
+
+    void recordSend(long nanos, boolean ok) {
+        if (ok) {
+            sentCount.increment();
+        } else {
+            failedCount.increment();
+        }
+        sendNanos.add(nanos);
+        maxSendNanos.accumulate(nanos);
+    }
+
+    public WebSocketMetricsVO metrics() {
+        long queued = 0;
+        int maxDepth = 0;
+        for (ClientSession client : sessions.values()) {
+            int depth = client.queueDepth();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        long sends = sentCount.sum() + failedCount.sum();
+        return WebSocketMetricsVO.builder()
+                .sessionCount(sessions.size())
+                .topicCount(topics.size())
+                .queuedMessages(queued)
+                .maxQueueDepth(maxDepth)
+                .sentCount(sentCount.sum())
+                .failedCount(failedCount.sum())
+                .evictedCount(evictedCount.sum())
+                .avgSendMillis(sends == 0 ? 0.0 : sendNanos.sum() / 1e6 / sends)
+                .maxSendMillis(maxSendNanos.get() / 1e6)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        broadcastExecutor.shutdown();
+    }
+}
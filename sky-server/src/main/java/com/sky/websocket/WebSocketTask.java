@@ -3,19 +3,17 @@ package com.sky.websocket;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 @Component
 public class WebSocketTask {
     @Autowired
-    private WebSocketServer webSocketServer;
+    private WebSocketSessionRegistry webSocketSessionRegistry;
 
     /**
-     * 通过WebSocket每隔5秒向客户端发送消息
+     * 定时检查本节点的websocket连接，向空闲连接发送ping，清理已断开的连接
      */
-    @Scheduled(cron = "0/5 * * * * ?")
-    public void sendMessageToClient() {
-        webSocketServer.sendToAllClient("这是来自服务端的消息：" + DateTimeFormatter.ofPattern("HH:mm:ss").format(LocalDateTime.now()));
+    @Scheduled(fixedDelayString = "${sky.websocket.heartbeat-check-millis:5000}")
+    public void heartbeat() {
+        webSocketSessionRegistry.heartbeat();
     }
 }
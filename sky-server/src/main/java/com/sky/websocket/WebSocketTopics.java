@@ -0,0 +1,52 @@
+package com.sky.websocket;
+
+/**
+ * websocket订阅主题
+ * 主题格式为 类型:标识，例如 shop:default、role:merchant、order:123
+ */
+public class WebSocketTopics {
+
+    public static final String SHOP_PREFIX = "shop:";
+    public static final String ROLE_PREFIX = "role:";
+    public static final String ORDER_PREFIX = "order:";
+
+    //系统目前只有一个门店
+    public static final String DEFAULT_SHOP = "default";
+
+    //商家端
+    public static final String ROLE_MERCHANT = "merchant";
+
+    public static String shop(String shopId) {
+        return SHOP_PREFIX + shopId;
+    }
+
+    public static String role(String role) {
+        return ROLE_PREFIX + role;
+    }
+
+    public static String order(Long orderId) {
+        return ORDER_PREFIX + orderId;
+    }
+
+    /**
+     * 排队下单凭证的处理结果
+     */
+    public static String ticket(String ticket) {
+        return ORDER_PREFIX + "ticket:" + ticket;
+    }
+
+    /**
+     * 是否是允许订阅的主题
+     */
+    public static boolean isValid(String topic) {
+        if (topic == null) {
+            return false;
+        }
+        for (String prefix : new String[]{SHOP_PREFIX, ROLE_PREFIX, ORDER_PREFIX}) {
+            if (topic.startsWith(prefix) && topic.length() > prefix.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,27 @@
+-- 购物车中某个商品的数量增加，返回{结果, 购物车hash的全部field和值}
+-- KEYS[1] 购物车hash  KEYS[2] 待同步到mysql的用户zset
+-- ARGV[1] 商品field  ARGV[2] 增加的数量  ARGV[3] 商品不存在时写入的json（为空则不新增）
+-- ARGV[4] 过期秒数  ARGV[5] 用户id
+-- 结果为增加后的数量，-1表示商品不存在且没有传入json，-2表示购物车还没有从mysql加载
+if redis.call('HEXISTS', KEYS[1], '_loaded') == 0 then
+    return {-2}
+end
+local delta = tonumber(ARGV[2])
+local raw = redis.call('HGET', KEYS[1], ARGV[1])
+local number
+if raw then
+    local item = cjson.decode(raw)
+    number = item['number'] + delta
+    item['number'] = number
+    redis.call('HSET', KEYS[1], ARGV[1], cjson.encode(item))
+elseif ARGV[3] ~= '' then
+    redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])
+    number = delta
+else
+    return {-1}
+end
+redis.call('EXPIRE', KEYS[1], ARGV[4])
+redis.call('ZINCRBY', KEYS[2], 1, ARGV[5])
+local cart = redis.call('HGETALL', KEYS[1])
+table.insert(cart, 1, number)
+return cart
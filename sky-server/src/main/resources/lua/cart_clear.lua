@@ -0,0 +1,8 @@
+-- 清空购物车，保留_loaded标记，避免下次读取时又从mysql加载出未同步的旧数据
+-- KEYS[1] 购物车hash  KEYS[2] 待同步到mysql的用户zset
+-- ARGV[1] 过期秒数  ARGV[2] _loaded标记的值  ARGV[3] 用户id
+redis.call('DEL', KEYS[1])
+redis.call('HSET', KEYS[1], '_loaded', ARGV[2])
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+redis.call('ZINCRBY', KEYS[2], 1, ARGV[3])
+return 1
@@ -0,0 +1,10 @@
+-- 同步到mysql后移除待同步标记，同步期间又被修改过（分数变了）的用户保留，下一批再同步
+-- KEYS[1] 待同步到mysql的用户zset
+-- ARGV 用户id和读取时的分数交替
+for i = 1, #ARGV, 2 do
+    local score = redis.call('ZSCORE', KEYS[1], ARGV[i])
+    if score and tonumber(score) == tonumber(ARGV[i + 1]) then
+        redis.call('ZREM', KEYS[1], ARGV[i])
+    end
+end
+return 1
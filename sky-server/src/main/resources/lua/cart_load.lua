@@ -0,0 +1,14 @@
+-- 把mysql中的购物车加载到redis，已经加载过（有_loaded标记）时不覆盖
+-- KEYS[1] 购物车hash
+-- ARGV[1] 过期秒数  ARGV[2] _loaded标记的值  ARGV[3..] 商品field和json交替
+if redis.call('HEXISTS', KEYS[1], '_loaded') == 1 then
+    return 0
+end
+-- 旧的写穿模式留下的数据可能不完整，整体替换
+redis.call('DEL', KEYS[1])
+redis.call('HSET', KEYS[1], '_loaded', ARGV[2])
+for i = 3, #ARGV, 2 do
+    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+return 1
@@ -0,0 +1,27 @@
+-- 从购物车中扣减已下单的商品数量，减到0时删除，下单后新加入的商品和增加的数量保留
+-- KEYS[1] 购物车hash  KEYS[2] 待同步到mysql的用户zset
+-- ARGV[1] 过期秒数  ARGV[2] 用户id  ARGV[3]起每两个为 商品field 下单数量
+-- 返回修改的商品数，-2表示购物车还没有从mysql加载
+if redis.call('HEXISTS', KEYS[1], '_loaded') == 0 then
+    return -2
+end
+local changed = 0
+for i = 3, #ARGV, 2 do
+    local raw = redis.call('HGET', KEYS[1], ARGV[i])
+    if raw then
+        local item = cjson.decode(raw)
+        local number = item['number'] - tonumber(ARGV[i + 1])
+        if number > 0 then
+            item['number'] = number
+            redis.call('HSET', KEYS[1], ARGV[i], cjson.encode(item))
+        else
+            redis.call('HDEL', KEYS[1], ARGV[i])
+        end
+        changed = changed + 1
+    end
+end
+if changed > 0 then
+    redis.call('EXPIRE', KEYS[1], ARGV[1])
+    redis.call('ZINCRBY', KEYS[2], 1, ARGV[2])
+end
+return changed
@@ -0,0 +1,19 @@
+-- 用新的商品json替换购物车中的商品（价格、名称、图片变化），保留当前数量
+-- KEYS[1] 购物车hash  KEYS[2] 待同步到mysql的用户zset
+-- ARGV[1] 过期秒数  ARGV[2] 用户id  ARGV[3]起每两个为 商品field 新的商品json
+-- 返回修改的商品数，已经被删除的商品不再写入
+local changed = 0
+for i = 3, #ARGV, 2 do
+    local raw = redis.call('HGET', KEYS[1], ARGV[i])
+    if raw then
+        local item = cjson.decode(ARGV[i + 1])
+        item['number'] = cjson.decode(raw)['number']
+        redis.call('HSET', KEYS[1], ARGV[i], cjson.encode(item))
+        changed = changed + 1
+    end
+end
+if changed > 0 then
+    redis.call('EXPIRE', KEYS[1], ARGV[1])
+    redis.call('ZINCRBY', KEYS[2], 1, ARGV[2])
+end
+return changed
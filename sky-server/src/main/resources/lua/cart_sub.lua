@@ -0,0 +1,25 @@
+-- 购物车中某个商品的数量减一，减到0时删除该商品，返回{结果, 购物车hash的全部field和值}
+-- KEYS[1] 购物车hash  KEYS[2] 待同步到mysql的用户zset
+-- ARGV[1] 商品field  ARGV[2] 过期秒数  ARGV[3] 用户id
+-- 结果为减少后的数量，0表示已删除，-1表示商品不存在，-2表示购物车还没有从mysql加载
+if redis.call('HEXISTS', KEYS[1], '_loaded') == 0 then
+    return {-2}
+end
+local raw = redis.call('HGET', KEYS[1], ARGV[1])
+local number = -1
+if raw then
+    local item = cjson.decode(raw)
+    number = item['number'] - 1
+    if number > 0 then
+        item['number'] = number
+        redis.call('HSET', KEYS[1], ARGV[1], cjson.encode(item))
+    else
+        number = 0
+        redis.call('HDEL', KEYS[1], ARGV[1])
+    end
+    redis.call('EXPIRE', KEYS[1], ARGV[2])
+    redis.call('ZINCRBY', KEYS[2], 1, ARGV[3])
+end
+local cart = redis.call('HGETALL', KEYS[1])
+table.insert(cart, 1, number)
+return cart
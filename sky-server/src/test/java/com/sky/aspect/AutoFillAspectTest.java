@@ -0,0 +1,173 @@
+package com.sky.aspect;
+
+import com.sky.annotation.AutoFill;
+import com.sky.context.BaseContext;
+import com.sky.entity.Dish;
+import com.sky.entity.Employee;
+import com.sky.enumeration.OperationType;
+import lombok.Data;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 公共字段填充：插入、更新、批量插入的填充结果
+ */
+class AutoFillAspectTest {
+
+    private static final long CURRENT_ID = 10L;
+
+    private final AutoFillAspect aspect = new AutoFillAspect();
+
+    /**
+     * 模拟mapper方法上的注解
+     */
+    interface Mapper {
+        @AutoFill(OperationType.INSERT)
+        void insert(Object entity);
+
+        @AutoFill(OperationType.UPDATE)
+        void update(Object entity);
+    }
+
+    /**
+     * 只有更新字段的实体
+     */
+    @Data
+    public static class UpdateOnlyEntity {
+        private LocalDateTime updateTime;
+        private Long updateUser;
+    }
+
+    @BeforeEach
+    void setUp() {
+        BaseContext.setCurrentId(CURRENT_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void insertFillsAllFields() {
+        Employee employee = new Employee();
+
+        aspect.autoFill(joinPoint("insert", employee));
+
+        assertNotNull(employee.getCreateTime());
+        assertEquals(employee.getCreateTime(), employee.getUpdateTime());
+        assertEquals(CURRENT_ID, employee.getCreateUser());
+        assertEquals(CURRENT_ID, employee.getUpdateUser());
+    }
+
+    @Test
+    void updateFillsOnlyUpdateFields() {
+        Employee employee = new Employee();
+
+        aspect.autoFill(joinPoint("update", employee));
+
+        assertNull(employee.getCreateTime());
+        assertNull(employee.getCreateUser());
+        assertNotNull(employee.getUpdateTime());
+        assertEquals(CURRENT_ID, employee.getUpdateUser());
+    }
+
+    @Test
+    void batchInsertFillsEveryElement() {
+        List<Dish> dishes = Arrays.asList(new Dish(), null, new Dish());
+
+        aspect.autoFill(joinPoint("insert", dishes));
+
+        for (Dish dish : Arrays.asList(dishes.get(0), dishes.get(2))) {
+            assertNotNull(dish.getCreateTime());
+            assertEquals(CURRENT_ID, dish.getCreateUser());
+            assertEquals(CURRENT_ID, dish.getUpdateUser());
+        }
+    }
+
+    @Test
+    void missingSetterFailsOnlyWhenNeeded() {
+        UpdateOnlyEntity entity = new UpdateOnlyEntity();
+
+        aspect.autoFill(joinPoint("update", entity));
+        assertEquals(CURRENT_ID, entity.getUpdateUser());
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> aspect.autoFill(joinPoint("insert", entity)));
+        assertTrue(e.getCause() instanceof NoSuchMethodException);
+    }
+
+    @Test
+    void missingCurrentIdFillsNull() {
+        BaseContext.removeCurrentId();
+        Employee employee = new Employee();
+
+        aspect.autoFill(joinPoint("insert", employee));
+
+        assertNotNull(employee.getCreateTime());
+        assertNull(employee.getCreateUser());
+    }
+
+    @Test
+    void nullArgumentIsIgnored() {
+        assertDoesNotThrow(() -> aspect.autoFill(joinPoint("insert", new Object[]{null})));
+    }
+
+    @Test
+    void cachedSettersFillLaterCalls() {
+        Employee employee = new Employee();
+        JoinPoint joinPoint = joinPoint("insert", employee);
+        aspect.autoFill(joinPoint);
+
+        // 第二次调用使用缓存的setter，填充新的当前用户
+        BaseContext.setCurrentId(CURRENT_ID + 1);
+        aspect.autoFill(joinPoint);
+
+        assertEquals(CURRENT_ID + 1, employee.getCreateUser());
+        assertEquals(CURRENT_ID + 1, employee.getUpdateUser());
+    }
+
+    private static JoinPoint joinPoint(String methodName, Object entity) {
+        return joinPoint(methodName, new Object[]{entity});
+    }
+
+    /**
+     * 只实现切面用到的getSignature、getMethod和getArgs
+     */
+    private static JoinPoint joinPoint(String methodName, Object[] args) {
+        Method method;
+        try {
+            method = Mapper.class.getMethod(methodName, Object.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+        MethodSignature signature = (MethodSignature) Proxy.newProxyInstance(AutoFillAspectTest.class.getClassLoader(),
+                new Class<?>[]{MethodSignature.class}, (proxy, m, a) -> {
+                    if ("getMethod".equals(m.getName())) {
+                        return method;
+                    }
+                    throw new UnsupportedOperationException(m.getName());
+                });
+        return (JoinPoint) Proxy.newProxyInstance(AutoFillAspectTest.class.getClassLoader(),
+                new Class<?>[]{JoinPoint.class}, (proxy, m, a) -> {
+                    switch (m.getName()) {
+                        case "getSignature":
+                            return signature;
+                        case "getArgs":
+                            return args;
+                        default:
+                            throw new UnsupportedOperationException(m.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,95 @@
+package com.sky.cache;
+
+import com.sky.properties.MenuCacheProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 单飞加载和后台刷新：刷新的结果不会返回给同时发生的缓存未命中
+ */
+class SingleFlightLoaderTest {
+
+    private static final String KEY = "dish::1";
+
+    private SingleFlightLoader loader;
+    private final CountDownLatch refreshStarted = new CountDownLatch(1);
+    private final CountDownLatch finishRefresh = new CountDownLatch(1);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOps = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOps);
+        // 租约锁总能拿到，刷新和加载各自持有不同的token
+        when(valueOps.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class))).thenReturn(true);
+
+        loader = new SingleFlightLoader();
+        ReflectionTestUtils.setField(loader, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(loader, "menuCacheProperties", new MenuCacheProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        finishRefresh.countDown();
+        loader.shutdown();
+    }
+
+    @Test
+    void missDuringRefreshLoadsItsOwnValue() throws Throwable {
+        loader.refreshAsync(KEY, this::blockingRefresh);
+        assertTrue(refreshStarted.await(5, TimeUnit.SECONDS));
+
+        Object value = loader.load(KEY, () -> null, () -> "loaded");
+
+        assertEquals("loaded", value);
+    }
+
+    @Test
+    void concurrentRefreshesRunOnce() throws InterruptedException {
+        loader.refreshAsync(KEY, this::blockingRefresh);
+        assertTrue(refreshStarted.await(5, TimeUnit.SECONDS));
+
+        loader.refreshAsync(KEY, () -> "again");
+
+        ThreadPoolExecutor refreshExecutor = (ThreadPoolExecutor) ReflectionTestUtils.getField(loader, "refreshExecutor");
+        assertEquals(1, refreshExecutor.getTaskCount());
+    }
+
+    @Test
+    void refreshCanRunAgainAfterFinishing() throws InterruptedException {
+        CountDownLatch second = new CountDownLatch(1);
+        loader.refreshAsync(KEY, () -> "first");
+
+        // 第一次刷新结束后才会接受下一次
+        long deadline = System.currentTimeMillis() + 5000;
+        while (second.getCount() > 0 && System.currentTimeMillis() < deadline) {
+            loader.refreshAsync(KEY, () -> {
+                second.countDown();
+                return "second";
+            });
+            second.await(10, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(0, second.getCount());
+    }
+
+    private Object blockingRefresh() throws InterruptedException {
+        refreshStarted.countDown();
+        finishRefresh.await(5, TimeUnit.SECONDS);
+        return "refreshed";
+    }
+}
@@ -0,0 +1,117 @@
+package com.sky.interceptor;
+
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.properties.JwtProperties;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.SignatureException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 令牌校验缓存：与每次都验签解析的结果一致，错误令牌不会因为缓存而通过
+ */
+class JwtTokenVerifierTest {
+
+    private static final String ADMIN_SECRET = "itcast";
+    private static final String USER_SECRET = "itheima";
+
+    private JwtTokenVerifier verifier;
+
+    @BeforeEach
+    void setUp() {
+        JwtProperties properties = new JwtProperties();
+        properties.setAdminSecretKey(ADMIN_SECRET);
+        properties.setUserSecretKey(USER_SECRET);
+        properties.setVerifiedCacheSize(100);
+        verifier = new JwtTokenVerifier();
+        ReflectionTestUtils.setField(verifier, "jwtProperties", properties);
+        verifier.init();
+    }
+
+    @Test
+    void cachedVerificationMatchesFullParse() {
+        String token = adminToken(7200000);
+
+        // 第一次验签后放入缓存，第二次命中缓存
+        verifier.verifyAdmin(token);
+        Claims parsed = JwtUtil.parseJWT(ADMIN_SECRET, token);
+        Claims cached = verifier.verifyAdmin(token);
+        assertEquals(parsed.get(JwtClaimsConstant.EMP_ID).toString(), cached.get(JwtClaimsConstant.EMP_ID).toString());
+        assertEquals(parsed.getExpiration(), cached.getExpiration());
+    }
+
+    @Test
+    void adminTokenIsRejectedOnUserSide() {
+        String token = adminToken(7200000);
+        verifier.verifyAdmin(token);
+
+        // 管理端已缓存的令牌不能用于用户端
+        assertThrows(SignatureException.class, () -> verifier.verifyUser(token));
+    }
+
+    @Test
+    void tamperedTokenIsRejected() {
+        String token = adminToken(7200000);
+        verifier.verifyAdmin(token);
+
+        // 改掉载荷中的员工id，签名不变
+        String[] parts = token.split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)
+                .replace("\"" + JwtClaimsConstant.EMP_ID + "\":1", "\"" + JwtClaimsConstant.EMP_ID + "\":2");
+        String tampered = parts[0] + "." + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + "." + parts[2];
+        assertNotEquals(token, tampered);
+        assertThrows(SignatureException.class, () -> verifier.verifyAdmin(tampered));
+    }
+
+    @Test
+    void failedVerificationIsNotCached() {
+        String token = JwtUtil.createJWT("other", 7200000, claims());
+
+        assertThrows(SignatureException.class, () -> verifier.verifyAdmin(token));
+        assertThrows(SignatureException.class, () -> verifier.verifyAdmin(token));
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        assertThrows(ExpiredJwtException.class, () -> verifier.verifyAdmin(adminToken(-1000)));
+    }
+
+    @Test
+    void cachedTokenExpiresWithToken() throws InterruptedException {
+        // exp精确到秒，过期时间在1到2秒之后
+        String token = adminToken(2000);
+        assertNotNull(verifier.verifyAdmin(token));
+
+        Thread.sleep(3000);
+
+        assertThrows(ExpiredJwtException.class, () -> verifier.verifyAdmin(token));
+    }
+
+    @Test
+    void emptyTokenIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> verifier.verifyAdmin(""));
+        assertThrows(IllegalArgumentException.class, () -> verifier.verifyUser(null));
+    }
+
+    private static String adminToken(long ttlMillis) {
+        return JwtUtil.createJWT(ADMIN_SECRET, ttlMillis, claims());
+    }
+
+    private static Map<String, Object> claims() {
+        // createJWT会在传入的map上设置过期时间，不能用不可变map
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JwtClaimsConstant.EMP_ID, 1L);
+        return claims;
+    }
+}
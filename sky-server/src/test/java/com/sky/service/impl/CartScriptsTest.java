@@ -0,0 +1,330 @@
+package com.sky.service.impl;
+
+import com.sky.cache.MenuItemCatalog;
+import com.sky.config.RedisConfiguration;
+import com.sky.context.BaseContext;
+import com.sky.dto.ShoppingCartDTO;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.ShoppingCartProperties;
+import com.sky.vo.MenuItemVO;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * redis模式的购物车：商品json用RedisConfiguration配置的序列化器生成，经过lua脚本（cjson）修改后
+ * 仍能解析成ShoppingCart，金额、时间不变，数量修改是原子的
+ * 脚本用例需要可用的redis（-Dsky.test.redis.host/port，默认localhost:6379），连接不上时跳过；
+ * 解析脚本返回值的用例不需要redis
+ */
+class CartScriptsTest {
+
+    private static final int THREADS = 16;
+    private static final int TAPS_PER_THREAD = 200;
+    private static final String DIRTY_KEY = "shopping_cart:dirty";
+    private static final String FLAVOR = "不辣";
+    private static final BigDecimal PRICE = new BigDecimal("12.50");
+    private static final LocalDateTime CREATE_TIME = LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123456789);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static boolean redisAvailable;
+    // 和应用使用同一个配置（Jackson默认类型信息 + JavaTimeModule）
+    private static RedisTemplate<String, Object> redisTemplate;
+
+    private final ShoppingCartMapper shoppingCartMapper = mock(ShoppingCartMapper.class);
+    private final MenuItemCatalog menuItemCatalog = mock(MenuItemCatalog.class);
+    private ShoppingCartServiceimpl service;
+    private Long userId;
+
+    @BeforeAll
+    static void connect() {
+        String host = System.getProperty("sky.test.redis.host", "localhost");
+        int port = Integer.getInteger("sky.test.redis.port", 6379);
+        connectionFactory = new LettuceConnectionFactory(host, port);
+        connectionFactory.afterPropertiesSet();
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            redisAvailable = "PONG".equals(connection.ping());
+        } catch (Exception e) {
+            redisAvailable = false;
+        }
+        redisTemplate = new RedisConfiguration().redisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        // 负数用户id不会和真实用户冲突
+        userId = -ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        BaseContext.setCurrentId(userId);
+
+        ShoppingCartProperties properties = new ShoppingCartProperties();
+        properties.setRedisAuthoritative(true);
+        service = new ShoppingCartServiceimpl();
+        ReflectionTestUtils.setField(service, "shoppingCartMapper", shoppingCartMapper);
+        ReflectionTestUtils.setField(service, "menuItemCatalog", menuItemCatalog);
+        ReflectionTestUtils.setField(service, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(service, "shoppingCartProperties", properties);
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", new StringRedisTemplate(connectionFactory));
+
+        when(shoppingCartMapper.list(any())).thenReturn(Collections.emptyList());
+        when(menuItemCatalog.getDish(1L)).thenReturn(MenuItemVO.builder()
+                .id(1L).name("宫保鸡丁").price(PRICE).image("a.png").status(1).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (redisAvailable) {
+            redisTemplate.delete(cartKey());
+            redisTemplate.opsForZSet().remove(DIRTY_KEY, String.valueOf(userId));
+        }
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void scriptReplyIsParsedWithConfiguredSerializer() {
+        ShoppingCart stored = cart(3);
+        ScriptedRedisTemplate scripted = useScriptedRedis();
+        scripted.replies.add(Arrays.asList(3L, "_loaded", "1", "dish_1:" + FLAVOR, json(stored)));
+
+        List<ShoppingCart> items = service.add(dishDTO());
+
+        assertEquals(Collections.singletonList(stored), items);
+    }
+
+    @Test
+    void newItemIsWrittenWithConfiguredSerializer() {
+        ScriptedRedisTemplate scripted = useScriptedRedis();
+        scripted.replies.add(Collections.singletonList(-1L));
+        scripted.replies.add(Collections.singletonList(1L));
+
+        service.add(dishDTO());
+
+        // 第二次调用的ARGV[3]是新商品的json
+        Object written = redisTemplate.getHashValueSerializer()
+                .deserialize(((String) scripted.args.get(1)[2]).getBytes(StandardCharsets.UTF_8));
+        ShoppingCart item = assertInstanceOf(ShoppingCart.class, written);
+        assertEquals(PRICE, item.getAmount());
+        assertEquals(1, item.getNumber());
+        assertEquals(FLAVOR, item.getDishFlavor());
+        assertNotNull(item.getCreateTime());
+    }
+
+    @Test
+    void changedPriceIsRefreshedAndSaved() {
+        ShoppingCart stored = cart(3);
+        stored.setAmount(new BigDecimal("10.00"));
+        ScriptedRedisTemplate scripted = useScriptedRedis();
+        scripted.replies.add(Arrays.asList(3L, "_loaded", "1", "dish_1:" + FLAVOR, json(stored)));
+
+        List<ShoppingCart> items = service.add(dishDTO());
+
+        assertEquals(PRICE, items.get(0).getAmount());
+        // 刷新后的商品通过cart_reprice写回：{过期秒数, 用户id, field, json}
+        Object[] args = scripted.args.get(1);
+        assertEquals("dish_1:" + FLAVOR, args[2]);
+        Object written = redisTemplate.getHashValueSerializer()
+                .deserialize(((String) args[3]).getBytes(StandardCharsets.UTF_8));
+        assertEquals(PRICE, assertInstanceOf(ShoppingCart.class, written).getAmount());
+    }
+
+    @Test
+    void addedItemSurvivesScriptRewrite() {
+        assumeRedis();
+
+        List<ShoppingCart> first = service.add(dishDTO());
+        // 第二次加购由cjson解码、修改数量后重新编码
+        List<ShoppingCart> second = service.add(dishDTO());
+
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+        ShoppingCart item = second.get(0);
+        assertEquals(2, item.getNumber());
+        assertEquals(0, PRICE.compareTo(item.getAmount()));
+        assertEquals(first.get(0).getCreateTime(), item.getCreateTime());
+        assertEquals("宫保鸡丁", item.getName());
+        assertEquals(FLAVOR, item.getDishFlavor());
+        assertEquals(second, service.list());
+    }
+
+    @Test
+    void cartLoadedFromMysqlSurvivesScriptRewrite() {
+        assumeRedis();
+        when(shoppingCartMapper.list(any())).thenReturn(Collections.singletonList(cart(2)));
+
+        List<ShoppingCart> items = service.add(dishDTO());
+
+        assertEquals(1, items.size());
+        ShoppingCart item = items.get(0);
+        assertEquals(3, item.getNumber());
+        assertEquals(0, PRICE.compareTo(item.getAmount()));
+        assertEquals(CREATE_TIME, item.getCreateTime());
+        assertEquals(userId, item.getUserId());
+    }
+
+    @Test
+    void repricedCartKeepsNumberThroughScript() {
+        assumeRedis();
+        ShoppingCart old = cart(2);
+        old.setAmount(new BigDecimal("10.00"));
+        when(shoppingCartMapper.list(any())).thenReturn(Collections.singletonList(old));
+
+        assertEquals(0, PRICE.compareTo(service.list().get(0).getAmount()));
+        List<ShoppingCart> items = service.add(dishDTO());
+
+        assertEquals(3, items.get(0).getNumber());
+        assertEquals(0, PRICE.compareTo(items.get(0).getAmount()));
+    }
+
+    @Test
+    void subRemovesItemAtZero() {
+        assumeRedis();
+        service.add(dishDTO());
+        service.add(dishDTO());
+
+        assertEquals(1, service.sub(dishDTO()).get(0).getNumber());
+        assertTrue(service.sub(dishDTO()).isEmpty());
+        assertTrue(service.sub(dishDTO()).isEmpty());
+        assertTrue(service.list().isEmpty());
+    }
+
+    @Test
+    void removeKeepsQuantityAddedAfterCheckout() {
+        assumeRedis();
+        service.add(dishDTO());
+        service.add(dishDTO());
+        List<ShoppingCart> checkedOut = service.list();
+        // 下单时购物车中有2份，之后又加了1份
+        service.add(dishDTO());
+
+        service.remove(userId, checkedOut);
+
+        List<ShoppingCart> items = service.list();
+        assertEquals(1, items.size());
+        assertEquals(1, items.get(0).getNumber());
+        assertEquals(0, PRICE.compareTo(items.get(0).getAmount()));
+    }
+
+    @Test
+    void concurrentTapsAreAtomic() throws Exception {
+        assumeRedis();
+        service.add(dishDTO());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    BaseContext.setCurrentId(userId);
+                    start.await();
+                    for (int i = 0; i < TAPS_PER_THREAD; i++) {
+                        service.add(dishDTO());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int taps = THREADS * TAPS_PER_THREAD;
+        List<ShoppingCart> items = service.list();
+        assertEquals(1, items.size());
+        assertEquals(taps + 1, items.get(0).getNumber());
+        assertEquals(taps + 1, redisTemplate.opsForZSet().score(DIRTY_KEY, String.valueOf(userId)).intValue());
+    }
+
+    private static void assumeRedis() {
+        assumeTrue(redisAvailable, "redis不可用，跳过购物车脚本测试");
+    }
+
+    /**
+     * 不连接redis，脚本按顺序返回预先准备的结果
+     */
+    private ScriptedRedisTemplate useScriptedRedis() {
+        ScriptedRedisTemplate scripted = new ScriptedRedisTemplate();
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", scripted);
+        return scripted;
+    }
+
+    private String cartKey() {
+        return "user_" + userId + "_shopping_cart";
+    }
+
+    private ShoppingCart cart(int number) {
+        return ShoppingCart.builder()
+                .name("宫保鸡丁")
+                .userId(userId)
+                .dishId(1L)
+                .dishFlavor(FLAVOR)
+                .number(number)
+                .amount(PRICE)
+                .image("a.png")
+                .createTime(CREATE_TIME)
+                .build();
+    }
+
+    private static ShoppingCartDTO dishDTO() {
+        ShoppingCartDTO dto = new ShoppingCartDTO();
+        dto.setDishId(1L);
+        dto.setDishFlavor(FLAVOR);
+        return dto;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String json(ShoppingCart cart) {
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+        return new String(serializer.serialize(cart), StandardCharsets.UTF_8);
+    }
+
+    private static class ScriptedRedisTemplate extends StringRedisTemplate {
+
+        private final LinkedList<List<?>> replies = new LinkedList<>();
+        private final List<Object[]> args = new ArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            this.args.add(args);
+            return (T) replies.poll();
+        }
+    }
+}
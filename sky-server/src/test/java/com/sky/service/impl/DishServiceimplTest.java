@@ -0,0 +1,86 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Dish;
+import com.sky.entity.DishFlavor;
+import com.sky.mapper.DishFlavorMapper;
+import com.sky.mapper.DishMapper;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * 分类菜品连同口味一起查询：无论分类下有多少菜品，口味只查询一次
+ * 用查询次数衡量：原来1 + N次，现在2次
+ */
+@ExtendWith(MockitoExtension.class)
+class DishServiceimplTest {
+
+    @Mock
+    private DishMapper dishMapper;
+    @Mock
+    private DishFlavorMapper dishFlavorMapper;
+    @InjectMocks
+    private DishServiceimpl dishService;
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 50, 200})
+    void listWithFlavorLoadsFlavorsInOneQuery(int dishCount) {
+        List<Dish> dishes = new ArrayList<>();
+        List<DishFlavor> flavors = new ArrayList<>();
+        for (long id = 1; id <= dishCount; id++) {
+            dishes.add(Dish.builder().id(id).categoryId(1L).name("dish" + id).build());
+            // 每个菜品两种口味
+            flavors.add(DishFlavor.builder().dishId(id).name("辣度").value("[\"不辣\",\"微辣\"]").build());
+            flavors.add(DishFlavor.builder().dishId(id).name("忌口").value("[\"不要葱\"]").build());
+        }
+        when(dishMapper.list(any(Dish.class))).thenReturn(dishes);
+        when(dishFlavorMapper.getByDishIds(anyList())).thenReturn(flavors);
+
+        List<DishVO> result = dishService.listWithFlavor(Dish.builder().categoryId(1L).build());
+
+        assertEquals(dishCount, result.size());
+        for (DishVO dishVO : result) {
+            assertEquals(2, dishVO.getFlavors().size());
+            for (DishFlavor flavor : dishVO.getFlavors()) {
+                assertEquals(dishVO.getId(), flavor.getDishId());
+            }
+        }
+        verify(dishMapper, times(1)).list(any(Dish.class));
+        verify(dishFlavorMapper, times(1)).getByDishIds(anyList());
+        verify(dishFlavorMapper, never()).getByDishId(anyLong());
+    }
+
+    @Test
+    void dishWithoutFlavorGetsEmptyList() {
+        when(dishMapper.list(any(Dish.class))).thenReturn(Collections.singletonList(Dish.builder().id(1L).build()));
+        when(dishFlavorMapper.getByDishIds(anyList())).thenReturn(Collections.emptyList());
+
+        List<DishVO> result = dishService.listWithFlavor(new Dish());
+
+        assertNotNull(result.get(0).getFlavors());
+        assertTrue(result.get(0).getFlavors().isEmpty());
+    }
+
+    @Test
+    void emptyCategoryDoesNotQueryFlavors() {
+        when(dishMapper.list(any(Dish.class))).thenReturn(Collections.emptyList());
+
+        assertTrue(dishService.listWithFlavor(new Dish()).isEmpty());
+        verifyNoInteractions(dishFlavorMapper);
+    }
+}
@@ -0,0 +1,125 @@
+package com.sky.service.impl;
+
+import com.sky.properties.OrderNoProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单号生成的唯一性（多线程并发、同一毫秒序号用完）和节点编号分配
+ */
+class SnowflakeOrderNoGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 5000;
+
+    @Test
+    void concurrentNumbersAreUnique() throws Exception {
+        SnowflakeOrderNoGenerator generator = generator(3, mock(StringRedisTemplate.class));
+        Set<String> numbers = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    String last = null;
+                    for (int i = 0; i < PER_THREAD; i++) {
+                        // 所有线程使用同一个用户id，只靠时间、节点和序号区分
+                        String number = generator.next(10001L);
+                        assertEquals(24, number.length());
+                        assertEquals('3', number.charAt(17));
+                        // 同一线程内订单号单调递增
+                        assertTrue(last == null || number.compareTo(last) > 0, last + " >= " + number);
+                        assertTrue(numbers.add(number), "重复的订单号：" + number);
+                        last = number;
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(THREADS * PER_THREAD, numbers.size());
+    }
+
+    @Test
+    void userIdSuffixIsPadded() {
+        SnowflakeOrderNoGenerator generator = generator(0, mock(StringRedisTemplate.class));
+        assertTrue(generator.next(7L).endsWith("0007"));
+        assertTrue(generator.next(123456L).endsWith("3456"));
+    }
+
+    @Test
+    void appendPadded() {
+        StringBuilder sb = new StringBuilder();
+        SnowflakeOrderNoGenerator.appendPadded(sb, 5, 3);
+        SnowflakeOrderNoGenerator.appendPadded(sb, 42, 2);
+        SnowflakeOrderNoGenerator.appendPadded(sb, 999, 3);
+        assertEquals("00542999", sb.toString());
+    }
+
+    @Test
+    void invalidConfiguredNodeIdFailsFast() {
+        assertThrows(IllegalStateException.class, () -> generator(10, mock(StringRedisTemplate.class)));
+        assertThrows(IllegalStateException.class, () -> generator(-2, mock(StringRedisTemplate.class)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void leasesFirstFreeNodeId() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        when(ops.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class))).thenReturn(false);
+        when(ops.setIfAbsent(eq("order_no:node:2"), anyString(), anyLong(), any(TimeUnit.class))).thenReturn(true);
+
+        SnowflakeOrderNoGenerator generator = generator(-1, redis);
+        assertEquals('2', generator.next(1L).charAt(17));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failsFastWhenAllNodeIdsAreTaken() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        when(ops.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class))).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> generator(-1, redis));
+    }
+
+    private SnowflakeOrderNoGenerator generator(int nodeId, StringRedisTemplate redis) {
+        OrderNoProperties properties = new OrderNoProperties();
+        properties.setNodeId(nodeId);
+        SnowflakeOrderNoGenerator generator = new SnowflakeOrderNoGenerator();
+        ReflectionTestUtils.setField(generator, "orderNoProperties", properties);
+        ReflectionTestUtils.setField(generator, "stringRedisTemplate", redis);
+        generator.init();
+        return generator;
+    }
+}
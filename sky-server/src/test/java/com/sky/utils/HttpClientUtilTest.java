@@ -0,0 +1,166 @@
+package com.sky.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用本地桩服务器验证连接池复用和超时配置
+ */
+class HttpClientUtilTest {
+
+    private static final int MAX_PER_ROUTE = 8;
+    private static final int SOCKET_TIMEOUT_MILLIS = 300;
+    //并发线程数是每个路由连接数的两倍，等待连接的时间要足够长，避免取不到连接时doGet返回空串
+    private static final int CONNECTION_REQUEST_TIMEOUT_MILLIS = 10000;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private CloseableHttpClient httpClient;
+    private String baseUrl;
+    //服务端看到的客户端连接（按客户端端口区分）
+    private final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> respond(exchange, 200, "ok"));
+        server.createContext("/missing", exchange -> respond(exchange, 404, "not found"));
+        server.createContext("/echo", exchange -> respond(exchange, 200, read(exchange.getRequestBody())));
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(SOCKET_TIMEOUT_MILLIS * 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "late");
+        });
+        serverExecutor = Executors.newFixedThreadPool(MAX_PER_ROUTE * 2);
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        useHttpClient(HttpClientUtil.TIMEOUT_MSEC);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        HttpClientUtil.setHttpClient(null);
+        httpClient.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void sequentialRequestsReuseOneConnection() {
+        for (int i = 0; i < 50; i++) {
+            assertEquals("ok", HttpClientUtil.doGet(baseUrl + "/ok", null));
+        }
+        assertEquals(1, connections.size());
+    }
+
+    @Test
+    void concurrentRequestsStayWithinRouteLimit() throws Exception {
+        int threads = MAX_PER_ROUTE * 2;
+        int requestsPerThread = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        assertEquals("ok", HttpClientUtil.doGet(baseUrl + "/ok", null));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(connections.size() <= MAX_PER_ROUTE, "连接数：" + connections.size());
+    }
+
+    @Test
+    void errorResponseIsConsumedAndConnectionReused() {
+        assertEquals("", HttpClientUtil.doGet(baseUrl + "/missing", null));
+        assertEquals("ok", HttpClientUtil.doGet(baseUrl + "/ok", null));
+        assertEquals(1, connections.size());
+    }
+
+    @Test
+    void postSendsFormAndJsonBodies() throws IOException {
+        Map<String, String> params = Collections.singletonMap("code", "abc");
+
+        assertEquals("code=abc", HttpClientUtil.doPost(baseUrl + "/echo", params));
+        assertEquals("{\"code\":\"abc\"}", HttpClientUtil.doPost4Json(baseUrl + "/echo", params));
+        assertEquals(1, connections.size());
+    }
+
+    @Test
+    void postUsesConfiguredSocketTimeout() throws IOException {
+        // 请求上不再覆盖为固定的5秒，使用创建HttpClient时配置的读取超时
+        useHttpClient(SOCKET_TIMEOUT_MILLIS);
+        long begin = System.nanoTime();
+        assertThrows(SocketTimeoutException.class, () -> HttpClientUtil.doPost(baseUrl + "/slow", null));
+        assertThrows(SocketTimeoutException.class, () -> HttpClientUtil.doPost4Json(baseUrl + "/slow", null));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        assertTrue(millis < HttpClientUtil.TIMEOUT_MSEC, "耗时：" + millis + "ms");
+    }
+
+    /**
+     * 用指定的读取超时创建连接池并替换HttpClientUtil使用的客户端
+     */
+    private void useHttpClient(int socketTimeout) throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        httpClient = HttpClientUtil.createHttpClient(MAX_PER_ROUTE * 2, MAX_PER_ROUTE, 1000,
+                CONNECTION_REQUEST_TIMEOUT_MILLIS, socketTimeout, 30000, 60000);
+        HttpClientUtil.setHttpClient(httpClient);
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        connections.add(exchange.getRemoteAddress().getPort());
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,216 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import com.sky.vo.WebSocketMetricsVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 群发负载：慢客户端不拖慢投递和其它连接，队列满后被断开，其它连接按顺序收到全部消息
+ */
+class WebSocketSessionRegistryTest {
+
+    private static final int MAX_QUEUE_SIZE = 64;
+
+    private WebSocketSessionRegistry registry;
+    private ScheduledExecutorService completer;
+
+    @BeforeEach
+    void setUp() {
+        WebSocketProperties properties = new WebSocketProperties();
+        properties.setMaxQueueSize(MAX_QUEUE_SIZE);
+        registry = new WebSocketSessionRegistry();
+        ReflectionTestUtils.setField(registry, "webSocketProperties", properties);
+        registry.init();
+        completer = Executors.newScheduledThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+        completer.shutdownNow();
+    }
+
+    @Test
+    void slowClientsDoNotBlockBroadcast() throws IOException {
+        int fastCount = 100;
+        int slowCount = 5;
+        int messageCount = MAX_QUEUE_SIZE * 4;
+        List<FakeClient> fast = new ArrayList<>();
+        List<FakeClient> slow = new ArrayList<>();
+        for (int i = 0; i < fastCount; i++) {
+            fast.add(connect("fast-" + i, Mode.IMMEDIATE));
+        }
+        for (int i = 0; i < slowCount; i++) {
+            slow.add(connect("slow-" + i, Mode.NEVER));
+        }
+
+        for (int i = 0; i < messageCount; i++) {
+            registry.deliver(null, "m" + i);
+        }
+
+        for (FakeClient client : fast) {
+            assertEquals(expected(messageCount), client.received);
+        }
+        for (FakeClient client : slow) {
+            // 第一条在发送中，队列再放满后下一条触发断开
+            assertEquals(1, client.received.size());
+            verify(client.session).close(any(CloseReason.class));
+        }
+        WebSocketMetricsVO metrics = registry.metrics();
+        assertEquals(fastCount, metrics.getSessionCount());
+        assertEquals((long) slowCount, metrics.getEvictedCount());
+    }
+
+    @Test
+    void asyncSendsKeepOrderPerClient() throws Exception {
+        int clientCount = 50;
+        int messageCount = MAX_QUEUE_SIZE;
+        List<FakeClient> clients = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(connect("async-" + i, Mode.DELAYED));
+        }
+
+        for (int i = 0; i < messageCount; i++) {
+            registry.deliver(null, "m" + i);
+        }
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        for (FakeClient client : clients) {
+            while (client.received.size() < messageCount && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(expected(messageCount), client.received);
+        }
+        // 发送完成回调在收到消息之后才计数
+        long total = (long) clientCount * messageCount;
+        while (registry.metrics().getSentCount() < total && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0L, registry.metrics().getEvictedCount());
+        assertEquals(total, registry.metrics().getSentCount());
+    }
+
+    @Test
+    void topicDeliveryOnlyReachesSubscribers() {
+        FakeClient order = connect("order", Mode.IMMEDIATE, WebSocketTopics.order(1L));
+        FakeClient merchant = connect("merchant", Mode.IMMEDIATE, WebSocketTopics.role(WebSocketTopics.ROLE_MERCHANT));
+
+        registry.deliver(WebSocketTopics.order(1L), "paid");
+
+        assertEquals(Collections.singletonList("paid"), order.received);
+        assertTrue(merchant.received.isEmpty());
+
+        registry.unsubscribe("order", order.session, WebSocketTopics.order(1L));
+        registry.deliver(WebSocketTopics.order(1L), "delivered");
+        assertEquals(1, order.received.size());
+        assertEquals(1, registry.metrics().getTopicCount());
+    }
+
+    @Test
+    void failedSendEvictsClient() throws IOException {
+        FakeClient client = connect("broken", Mode.FAIL);
+
+        registry.deliver(null, "m0");
+
+        verify(client.session).close(any(CloseReason.class));
+        WebSocketMetricsVO metrics = registry.metrics();
+        assertEquals(0, metrics.getSessionCount());
+        assertEquals(1L, metrics.getFailedCount());
+        assertEquals(1L, metrics.getEvictedCount());
+    }
+
+    @Test
+    void reconnectClosesReplacedSession() throws IOException {
+        FakeClient old = connect("same", Mode.IMMEDIATE);
+        FakeClient current = connect("same", Mode.IMMEDIATE);
+
+        registry.deliver(null, "m0");
+
+        verify(old.session).close(any(CloseReason.class));
+        assertTrue(old.received.isEmpty());
+        assertEquals(Collections.singletonList("m0"), current.received);
+
+        // 旧连接的关闭回调不能注销新连接
+        registry.unregister("same", old.session);
+        assertEquals(1, registry.metrics().getSessionCount());
+    }
+
+    private FakeClient connect(String sid, Mode mode, String... topics) {
+        FakeClient client = new FakeClient(mode);
+        registry.register(sid, client.session, topics.length == 0
+                ? Collections.singletonList(WebSocketTopics.shop(WebSocketTopics.DEFAULT_SHOP))
+                : Arrays.asList(topics));
+        return client;
+    }
+
+    private static List<String> expected(int messageCount) {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            messages.add("m" + i);
+        }
+        return messages;
+    }
+
+    private enum Mode {
+        //发送立即完成
+        IMMEDIATE,
+        //发送在其它线程中稍后完成
+        DELAYED,
+        //发送一直不完成（慢客户端）
+        NEVER,
+        //发送失败
+        FAIL
+    }
+
+    private class FakeClient {
+
+        private final Session session = mock(Session.class);
+        private final RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+        FakeClient(Mode mode) {
+            when(session.getAsyncRemote()).thenReturn(remote);
+            when(session.isOpen()).thenReturn(true);
+            doAnswer(invocation -> {
+                received.add(invocation.getArgument(0));
+                SendHandler handler = invocation.getArgument(1);
+                switch (mode) {
+                    case IMMEDIATE:
+                        handler.onResult(new SendResult());
+                        break;
+                    case DELAYED:
+                        completer.schedule(() -> handler.onResult(new SendResult()), 1, TimeUnit.MILLISECONDS);
+                        break;
+                    case FAIL:
+                        handler.onResult(new SendResult(new IOException("broken pipe")));
+                        break;
+                    default:
+                        break;
+                }
+                return null;
+            }).when(remote).sendText(anyString(), any(SendHandler.class));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+-- 按天预聚合的销售数据，sky.report.rollup-enabled=true时报表读取该表
+-- status = 0：当天下单的订单数（所有状态）和新增用户数；status = 5（已完成）：当天下单且已完成的订单数和营业额
+-- 建表后调用 POST /admin/report/rebuild?begin=yyyy-MM-dd&end=yyyy-MM-dd 回填历史数据，再开启rollup-enabled
+create table if not exists daily_statistics
+(
+    stat_date         date           not null comment '日期（下单日期/注册日期）',
+    status            int            not null comment '0：订单数和新增用户数，5：已完成订单',
+    turnover          decimal(12, 2) not null default 0 comment '营业额',
+    order_count       int            not null default 0 comment '订单数',
+    valid_order_count int            not null default 0 comment '有效订单数',
+    new_user_count    int            not null default 0 comment '新增用户数',
+    primary key (stat_date, status)
+) comment '按天预聚合的统计数据';
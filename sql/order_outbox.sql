@@ -0,0 +1,23 @@
+-- 订单通知发件箱：下单、支付的事务中写入，事务提交后由OrderOutboxTask发送到redis频道或websocket
+-- status：0待发送 1已发送 2发送失败（超过最大重试次数）
+-- 已发送的消息保留sky.outbox.retention-days天（默认7天），由OrderOutboxTask每天清理
+create table if not exists order_outbox
+(
+    id              bigint       not null auto_increment comment '主键',
+    order_id        bigint       not null comment '订单id',
+    destination     varchar(32)  not null comment '发送目标：REDIS、WEBSOCKET',
+    payload         text         not null comment '消息内容',
+    status          int          not null default 0 comment '0待发送 1已发送 2发送失败',
+    attempts        int          not null default 0 comment '已尝试次数',
+    next_retry_time datetime     not null comment '下次可以发送的时间',
+    owner           varchar(64)  null comment '认领该消息的标识',
+    lease_until     datetime     null comment '认领到期时间',
+    create_time     datetime     not null comment '创建时间',
+    primary key (id),
+    -- 认领到期待发送的消息
+    index idx_status_next_retry_time (status, next_retry_time),
+    -- 查询本次认领的消息
+    index idx_owner (owner),
+    -- 清理过期的已发送消息
+    index idx_status_create_time (status, create_time)
+) comment '订单通知发件箱';